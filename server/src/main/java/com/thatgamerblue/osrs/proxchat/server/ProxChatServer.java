@@ -163,7 +163,18 @@ public class ProxChatServer
 	 */
 	public void start() throws IOException
 	{
-		networkHandler = new ServerNetworkHandler(config::getBindAddress, config::getPort, config::getPassword);
+		networkHandler = new ServerNetworkHandler(
+			config::getBindAddress,
+			config::getPort,
+			config::getUdpPort,
+			config::getPassword,
+			config::getReactorThreads,
+			config::getWorkerThreads,
+			config::isVirtualThreads,
+			config::getMixingThreshold,
+			config::getMaxForwardedSpeakers,
+			config::getUpdateIntervalTicks
+		);
 		networkHandler.initKryonet();
 		networkHandler.connect();
 	}
@@ -40,4 +40,41 @@ public class ServerConfig
 	 * Port for the server to bind to
 	 */
 	public int port = 30666;
+
+	/**
+	 * UDP port for the server to carry voice over, 0 to only use TCP
+	 */
+	public int udpPort = 30666;
+
+	/**
+	 * Number of threads to spread client connections over, 0 uses one per available processor
+	 */
+	public int reactorThreads = 0;
+
+	/**
+	 * Number of threads to handle messages from clients on, 0 uses one per available processor
+	 */
+	public int workerThreads = 0;
+
+	/**
+	 * Handle each client on a virtual thread of its own instead of the worker threads, needs Java 21 or newer
+	 */
+	public boolean virtualThreads = false;
+
+	/**
+	 * Number of people a player has to be able to hear at once before the server mixes them into a single stream for that
+	 * player, 0 to always send each speaker separately. Mixing decodes the voice of everyone talking near a player who gets
+	 * a mixed stream, so it's only worth turning on for servers that see large crowds
+	 */
+	public int mixingThreshold = 0;
+
+	/**
+	 * Most people a player is sent audio from separately at once, the loudest at the player win, 0 for no limit
+	 */
+	public int maxForwardedSpeakers = 6;
+
+	/**
+	 * Game ticks between position updates from each player, players still only send an update when they moved
+	 */
+	public int updateIntervalTicks = 1;
 }
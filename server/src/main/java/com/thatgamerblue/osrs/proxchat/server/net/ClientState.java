@@ -1,49 +1,100 @@
 package com.thatgamerblue.osrs.proxchat.server.net;
 
-import java.util.Objects;
-import java.util.UUID;
-import lombok.Value;
+import lombok.Getter;
 
 /**
- * Data class to hold the state of a client
+ * Holds the state of a client
+ * <p>
+ * One instance lives for the whole connection and is updated in place, rather than replaced, on every state update.
+ * Only the connection's own update thread writes to it. Fields are volatile so the relay sees new positions straight away,
+ * a relay racing an update may see a mix of old and new fields, which only affects a single frame.
  */
-@Value
+@Getter
 public class ClientState
 {
-	/**
-	 * Server-assigned UUID
-	 */
-	UUID uuid;
-
 	/**
 	 * Player world x position
 	 */
-	int x;
+	private volatile int x = -1;
 
 	/**
 	 * Player world y position
 	 */
-	int y;
+	private volatile int y = -1;
 
 	/**
 	 * Player world plane
 	 */
-	int plane;
+	private volatile int plane = -1;
 
 	/**
 	 * Player world
 	 */
-	int world;
+	private volatile int world = -1;
 
 	/**
 	 * Player game state
 	 */
-	int gameState;
+	private volatile int gameState = -1;
+
+	/**
+	 * Player chatroom, as sent by the client
+	 */
+	private volatile String roomName;
 
 	/**
-	 * Player chatroom
+	 * Player chatroom, interned by {@link RoomRegistry}
 	 */
-	String room;
+	private volatile int roomId = RoomRegistry.NO_ROOM;
+
+	/**
+	 * Has the client sent at least one update
+	 */
+	private volatile boolean initialized;
+
+	/**
+	 * Has the client sent an absolute position, which position deltas are applied on top of
+	 */
+	private volatile boolean positioned;
+
+	/**
+	 * Updates the position and game state of the player
+	 *
+	 * @param x         player world x position
+	 * @param y         player world y position
+	 * @param plane     player world plane
+	 * @param world     player world
+	 * @param gameState player game state
+	 */
+	public void update(int x, int y, int plane, int world, int gameState)
+	{
+		this.x = x;
+		this.y = y;
+		this.plane = plane;
+		this.world = world;
+		this.gameState = gameState;
+		this.initialized = true;
+	}
+
+	/**
+	 * Marks the position as absolute, so later position deltas can be applied to it
+	 */
+	public void setPositioned()
+	{
+		this.positioned = true;
+	}
+
+	/**
+	 * Moves the player to another chatroom
+	 *
+	 * @param roomName name of the room
+	 * @param roomId   id of the room, from {@link RoomRegistry#acquire(String)}
+	 */
+	public void setRoom(String roomName, int roomId)
+	{
+		this.roomName = roomName;
+		this.roomId = roomId;
+	}
 
 	/**
 	 * Gets the distance to another player. Basically just {@link net.runelite.api.coords.WorldPoint#distanceTo(net.runelite.api.coords.WorldPoint)} with a fancy wrapper
@@ -78,7 +129,7 @@ public class ClientState
 			return Integer.MAX_VALUE;
 		}
 
-		if (!Objects.equals(other.room, this.room))
+		if (this.roomId != other.roomId)
 		{
 			return Integer.MAX_VALUE;
 		}
@@ -0,0 +1,163 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+/**
+ * The speakers a listener is currently being forwarded, capped so a crowd can't make one listener cost the relay more than
+ * a handful of speakers
+ * <p>
+ * Speakers are ranked by how loud they are at the listener, i.e. the loudness of their frames less the distance
+ * attenuation, so both nearer and louder speakers win. A speaker only takes over a slot when it is clearly louder than the
+ * quietest speaker holding one, and only from a speaker that has held it for a while, so voices don't flap in and out.
+ */
+class ForwardingTable
+{
+	/**
+	 * How much louder, in db, a speaker has to be than the quietest forwarded speaker to take its slot
+	 */
+	private static final float HYSTERESIS = 6f;
+
+	/**
+	 * Time a speaker keeps its slot for before it can be replaced, in milliseconds
+	 */
+	private static final int HOLD_TIME = 500;
+
+	/**
+	 * Time without a frame after which a speaker has stopped talking and gives up its slot, in milliseconds
+	 */
+	private static final int EXPIRE_TIME = 250;
+
+	/**
+	 * Weight of each new frame in a speaker's smoothed loudness
+	 */
+	private static final float SMOOTHING = 0.2f;
+
+	/**
+	 * Connection ids of the forwarded speakers
+	 */
+	private int[] speakers = new int[0];
+
+	/**
+	 * Smoothed loudness of each forwarded speaker at the listener
+	 */
+	private float[] loudness = new float[0];
+
+	/**
+	 * Time each speaker was given its slot
+	 */
+	private long[] admitted = new long[0];
+
+	/**
+	 * Time each speaker last sent a frame
+	 */
+	private long[] lastSeen = new long[0];
+
+	/**
+	 * Number of slots in use
+	 */
+	private int size;
+
+	/**
+	 * Decides if a frame from a speaker should be forwarded to the listener
+	 *
+	 * @param speaker connection id of the speaker
+	 * @param level   loudness of the frame at the listener, in db
+	 * @param now     current time, in milliseconds
+	 * @param limit   most speakers to forward at once
+	 * @return true if the frame should be forwarded
+	 */
+	synchronized boolean admit(int speaker, float level, long now, int limit)
+	{
+		if (speakers.length < limit)
+		{
+			grow(limit);
+		}
+
+		int free = -1;
+		int weakest = -1;
+		for (int i = 0; i < size; i++)
+		{
+			if (speakers[i] == speaker)
+			{
+				loudness[i] += (level - loudness[i]) * SMOOTHING;
+				lastSeen[i] = now;
+				return true;
+			}
+
+			if (now - lastSeen[i] > EXPIRE_TIME)
+			{
+				free = i;
+			}
+			else if (now - admitted[i] >= HOLD_TIME && (weakest == -1 || loudness[i] < loudness[weakest]))
+			{
+				weakest = i;
+			}
+		}
+
+		int slot;
+		if (free != -1)
+		{
+			slot = free;
+		}
+		else if (size < limit)
+		{
+			slot = size++;
+		}
+		else if (weakest != -1 && level > loudness[weakest] + HYSTERESIS)
+		{
+			slot = weakest;
+		}
+		else
+		{
+			return false;
+		}
+
+		speakers[slot] = speaker;
+		loudness[slot] = level;
+		admitted[slot] = now;
+		lastSeen[slot] = now;
+		return true;
+	}
+
+	/**
+	 * Frees a speaker's slot, e.g. because it stopped talking
+	 *
+	 * @param speaker connection id of the speaker
+	 * @return true if the speaker held a slot
+	 */
+	synchronized boolean release(int speaker)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			if (speakers[i] == speaker)
+			{
+				size--;
+				speakers[i] = speakers[size];
+				loudness[i] = loudness[size];
+				admitted[i] = admitted[size];
+				lastSeen[i] = lastSeen[size];
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Makes room for more slots
+	 *
+	 * @param capacity number of slots needed
+	 */
+	private void grow(int capacity)
+	{
+		int[] newSpeakers = new int[capacity];
+		float[] newLoudness = new float[capacity];
+		long[] newAdmitted = new long[capacity];
+		long[] newLastSeen = new long[capacity];
+		System.arraycopy(speakers, 0, newSpeakers, 0, size);
+		System.arraycopy(loudness, 0, newLoudness, 0, size);
+		System.arraycopy(admitted, 0, newAdmitted, 0, size);
+		System.arraycopy(lastSeen, 0, newLastSeen, 0, size);
+		speakers = newSpeakers;
+		loudness = newLoudness;
+		admitted = newAdmitted;
+		lastSeen = newLastSeen;
+	}
+}
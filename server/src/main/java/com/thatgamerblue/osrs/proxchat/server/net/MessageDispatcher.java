@@ -0,0 +1,498 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Hands kryonet's events to worker threads, so handling a message never holds up the network threads
+ * <p>
+ * Each connection is handled either by one of a fixed set of workers, picked by its id, or by a worker of its own, e.g. on a
+ * virtual thread. Either way a connection's events are handled in the order they happened. Each worker has a bounded queue.
+ * When a queue is full, droppable messages are dropped and counted, and other events wait for room, so an overloaded server
+ * sheds audio rather than memory and the drop count shows it.
+ * <p>
+ * The queues are guarded by {@link ReentrantLock}s rather than monitors, as a virtual thread waiting on a monitor pins its
+ * carrier thread, which would stall the whole server once more clients wait than there are carriers.
+ */
+public class MessageDispatcher extends Listener
+{
+	/**
+	 * Most events queued for each shared worker
+	 */
+	private static final int QUEUE_SIZE = 1024;
+
+	/**
+	 * Most events queued for a connection's own worker
+	 */
+	private static final int CONNECTION_QUEUE_SIZE = 256;
+
+	/**
+	 * Longest time {@link #close()} waits for the workers to finish, in milliseconds
+	 */
+	private static final long CLOSE_TIMEOUT = 5000;
+
+	/**
+	 * Number of drops between each log line about them
+	 */
+	private static final int DROP_LOG_INTERVAL = 1000;
+
+	/**
+	 * Queued in place of a message to mark a connection connecting
+	 */
+	private static final Object CONNECTED = new Object();
+
+	/**
+	 * Queued in place of a message to mark a connection disconnecting
+	 */
+	private static final Object DISCONNECTED = new Object();
+
+	/**
+	 * Listener the events are handed to on the workers
+	 */
+	private final Listener listener;
+
+	/**
+	 * Picks out the messages that can be dropped when a worker falls behind
+	 */
+	private final Predicate<Object> droppable;
+
+	/**
+	 * Called with every message that is dropped instead of handled, e.g. to return it to a pool
+	 */
+	private final Consumer<Object> onDropped;
+
+	/**
+	 * Shared workers, indexed by connection id modulo their number, null if each connection gets its own
+	 */
+	private final Worker[] workers;
+
+	/**
+	 * Creates the thread of each connection's own worker, null if the workers are shared
+	 */
+	private final ThreadFactory threadFactory;
+
+	/**
+	 * Worker of each connected connection, when each connection gets its own
+	 */
+	private final ConcurrentHashMap<Connection, Worker> connectionWorkers = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of messages dropped because a worker's queue was full
+	 */
+	private final AtomicLong droppedMessages = new AtomicLong();
+
+	/**
+	 * Creates a dispatcher sharing a fixed set of workers between the connections, and starts the workers
+	 *
+	 * @param listener  listener to hand the events to
+	 * @param threads   number of worker threads
+	 * @param droppable picks out the messages that can be dropped when a worker falls behind
+	 * @param onDropped called with every message that is dropped instead of handled
+	 */
+	public MessageDispatcher(Listener listener, int threads, Predicate<Object> droppable, Consumer<Object> onDropped)
+	{
+		this.listener = listener;
+		this.droppable = droppable;
+		this.onDropped = onDropped;
+		this.threadFactory = null;
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			workers[i] = new Worker(QUEUE_SIZE, null);
+			workers[i].start(new Thread(workers[i], "Prox-Worker-" + i));
+		}
+	}
+
+	/**
+	 * Creates a dispatcher giving each connection a worker of its own, on a thread created when the connection connects
+	 *
+	 * @param listener      listener to hand the events to
+	 * @param threadFactory creates the thread of each connection's worker, e.g. virtual threads
+	 * @param droppable     picks out the messages that can be dropped when a worker falls behind
+	 * @param onDropped     called with every message that is dropped instead of handled
+	 */
+	public MessageDispatcher(Listener listener, ThreadFactory threadFactory, Predicate<Object> droppable, Consumer<Object> onDropped)
+	{
+		this.listener = listener;
+		this.droppable = droppable;
+		this.onDropped = onDropped;
+		this.threadFactory = threadFactory;
+		this.workers = null;
+	}
+
+	/**
+	 * Creates a thread factory for virtual threads, looked up reflectively as they only exist on Java 21 and newer
+	 *
+	 * @param name prefix of the thread names, followed by a counter
+	 * @return the thread factory, or null if this JVM can't create virtual threads
+	 */
+	public static ThreadFactory virtualThreadFactory(String name)
+	{
+		try
+		{
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException | RuntimeException ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Queues a connection connecting, starting its worker if it gets one of its own
+	 *
+	 * @param connection connection object from kryonet
+	 */
+	@Override
+	public void connected(Connection connection)
+	{
+		Worker worker;
+		if (threadFactory != null)
+		{
+			worker = new Worker(CONNECTION_QUEUE_SIZE, connection);
+			connectionWorkers.put(connection, worker);
+			worker.start(threadFactory.newThread(worker));
+		}
+		else
+		{
+			worker = workerFor(connection);
+		}
+		worker.queue(connection, CONNECTED, false);
+	}
+
+	/**
+	 * Queues a connection disconnecting
+	 *
+	 * @param connection connection object from kryonet
+	 */
+	@Override
+	public void disconnected(Connection connection)
+	{
+		Worker worker = workerFor(connection);
+		if (worker != null)
+		{
+			worker.queue(connection, DISCONNECTED, false);
+		}
+	}
+
+	/**
+	 * Queues a message received from a connection
+	 *
+	 * @param connection connection object from kryonet
+	 * @param message    message object deserialized by kryonet
+	 */
+	@Override
+	public void received(Connection connection, Object message)
+	{
+		Worker worker = workerFor(connection);
+		if (worker == null)
+		{
+			// the connection's worker has already handled it disconnecting
+			onDropped.accept(message);
+		}
+		else if (!worker.queue(connection, message, droppable.test(message)))
+		{
+			onDropped.accept(message);
+			long dropped = droppedMessages.incrementAndGet();
+			if (dropped % DROP_LOG_INTERVAL == 1)
+			{
+				System.out.println("Workers are falling behind, dropped " + dropped + " messages so far");
+			}
+		}
+	}
+
+	/**
+	 * Number of messages dropped because a worker's queue was full
+	 *
+	 * @return dropped message count
+	 */
+	public long getDroppedMessages()
+	{
+		return droppedMessages.get();
+	}
+
+	/**
+	 * Stops the workers once they've handled everything already queued, and waits for them to finish
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void close() throws InterruptedException
+	{
+		List<Worker> closing = new ArrayList<>(workers != null ? Arrays.asList(workers) : connectionWorkers.values());
+		for (Worker worker : closing)
+		{
+			worker.close();
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT);
+		for (Worker worker : closing)
+		{
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining > 0)
+			{
+				worker.thread.join(remaining);
+			}
+		}
+	}
+
+	/**
+	 * Picks the worker that handles a connection
+	 *
+	 * @param connection connection object from kryonet
+	 * @return the connection's worker, or null if it has its own and that has stopped
+	 */
+	private Worker workerFor(Connection connection)
+	{
+		if (workers == null)
+		{
+			return connectionWorkers.get(connection);
+		}
+		return workers[Math.floorMod(connection.getID(), workers.length)];
+	}
+
+	/**
+	 * Handles the events of one connection or a share of the connections, in the order they were queued
+	 */
+	private class Worker implements Runnable
+	{
+		/**
+		 * Connection of each queued event, a ring starting at {@link #head}
+		 */
+		private final Connection[] connections;
+
+		/**
+		 * Message of each queued event, or {@link #CONNECTED} or {@link #DISCONNECTED}
+		 */
+		private final Object[] messages;
+
+		/**
+		 * Connection the worker is for, null if it's shared
+		 */
+		private final Connection owner;
+
+		/**
+		 * Guards the queue and {@link #running}
+		 */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Signalled when an event is queued or the worker is closed
+		 */
+		private final Condition notEmpty = lock.newCondition();
+
+		/**
+		 * Signalled when room is made in the queue or the worker is closed
+		 */
+		private final Condition notFull = lock.newCondition();
+
+		/**
+		 * Thread the worker runs on
+		 */
+		private Thread thread;
+
+		/**
+		 * Index of the oldest queued event
+		 */
+		private int head;
+
+		/**
+		 * Number of queued events
+		 */
+		private int size;
+
+		/**
+		 * Is the worker still taking events
+		 */
+		private boolean running = true;
+
+		/**
+		 * Creates a worker, it has to be started before events are queued
+		 *
+		 * @param queueSize most events queued at once
+		 * @param owner     connection the worker is for, null if it's shared
+		 */
+		Worker(int queueSize, Connection owner)
+		{
+			this.connections = new Connection[queueSize];
+			this.messages = new Object[queueSize];
+			this.owner = owner;
+		}
+
+		/**
+		 * Starts handling events
+		 *
+		 * @param thread thread to run the worker on, running {@link #run()}
+		 */
+		void start(Thread thread)
+		{
+			this.thread = thread;
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Queues an event to be handled on this worker
+		 * <p>
+		 * Events raised on this worker itself, e.g. a connection being closed while one of its messages is handled, are handled
+		 * straight away, as the worker can't wait for room in its own queue.
+		 *
+		 * @param connection connection the event is for
+		 * @param message    message received, or {@link #CONNECTED} or {@link #DISCONNECTED}
+		 * @param droppable  can the event be dropped rather than waiting for room in the queue
+		 * @return false if the event was dropped
+		 */
+		boolean queue(Connection connection, Object message, boolean droppable)
+		{
+			if (Thread.currentThread() == thread)
+			{
+				handle(connection, message);
+				return true;
+			}
+
+			lock.lock();
+			try
+			{
+				while (size == connections.length && running)
+				{
+					if (droppable)
+					{
+						return false;
+					}
+					notFull.awaitUninterruptibly();
+				}
+
+				if (!running)
+				{
+					return false;
+				}
+
+				int tail = (head + size) % connections.length;
+				connections[tail] = connection;
+				messages[tail] = message;
+				if (size++ == 0)
+				{
+					notEmpty.signal();
+				}
+				return true;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Handles queued events until closed
+		 */
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				Connection connection;
+				Object message;
+				lock.lock();
+				try
+				{
+					while (size == 0 && running)
+					{
+						notEmpty.awaitUninterruptibly();
+					}
+
+					if (size == 0)
+					{
+						return;
+					}
+
+					connection = connections[head];
+					message = messages[head];
+					connections[head] = null;
+					messages[head] = null;
+					head = (head + 1) % connections.length;
+					if (size-- == connections.length)
+					{
+						notFull.signalAll();
+					}
+				}
+				finally
+				{
+					lock.unlock();
+				}
+
+				handle(connection, message);
+				if (message == DISCONNECTED && owner != null)
+				{
+					// nothing more will be queued for the connection
+					connectionWorkers.remove(owner, this);
+					close();
+				}
+			}
+		}
+
+		/**
+		 * Hands an event to the listener, an exception would stop the worker so it is only logged
+		 *
+		 * @param connection connection the event is for
+		 * @param message    message received, or {@link #CONNECTED} or {@link #DISCONNECTED}
+		 */
+		private void handle(Connection connection, Object message)
+		{
+			try
+			{
+				if (message == CONNECTED)
+				{
+					listener.connected(connection);
+				}
+				else if (message == DISCONNECTED)
+				{
+					listener.disconnected(connection);
+				}
+				else if (connection.isConnected())
+				{
+					listener.received(connection, message);
+				}
+				else
+				{
+					// the connection closed while this was queued, don't let it undo the cleanup on disconnect
+					onDropped.accept(message);
+				}
+			}
+			catch (RuntimeException ex)
+			{
+				ex.printStackTrace();
+			}
+		}
+
+		/**
+		 * Stops taking events, the worker exits once it has handled those already queued
+		 */
+		void close()
+		{
+			lock.lock();
+			try
+			{
+				running = false;
+				notEmpty.signal();
+				notFull.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodecs;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceDecoder;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceEncoder;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SMicPacket;
+import java.util.Arrays;
+
+/**
+ * What the {@link ServerMixer} keeps for one connection, both as a speaker and as a listener
+ * <p>
+ * As a speaker, incoming frames are decoded into a short queue and one is taken out every tick. As a listener, it holds
+ * whether the connection currently gets a mixed stream and the encoder for that stream.
+ */
+class MixState
+{
+	/**
+	 * Most frames queued for a speaker, older frames are dropped to keep the latency down
+	 */
+	private static final int QUEUE_FRAMES = 4;
+
+	/**
+	 * Frames queued before a speaker starts being mixed in, absorbs network jitter
+	 */
+	private static final int PREFETCH_FRAMES = 2;
+
+	/**
+	 * Ticks a listener keeps getting a mixed stream for after the crowd around them thins out, stops it flapping
+	 */
+	private static final int HOLD_TICKS = 1000 / AudioConstants.MS_PER_PACKET;
+
+	/**
+	 * Milliseconds after its last frame a speaker still counts as talking, a few frames so jitter doesn't drop it
+	 */
+	private static final long TALK_TIMEOUT = 5 * AudioConstants.MS_PER_PACKET;
+
+	/**
+	 * Decoded frames waiting to be mixed, a ring starting at {@link #head}
+	 */
+	private final byte[][] queue = new byte[QUEUE_FRAMES][AudioConstants.FRAME_SIZE];
+
+	/**
+	 * Index of the oldest frame in {@link #queue}
+	 */
+	private int head;
+
+	/**
+	 * Number of frames in {@link #queue}
+	 */
+	private int count;
+
+	/**
+	 * Has the speaker got through prefetching and is being mixed in
+	 */
+	private boolean playing;
+
+	/**
+	 * Has a frame been queued yet, so {@link #lastSequence} is valid
+	 */
+	private boolean hasSequence;
+
+	/**
+	 * Sequence number of the last frame queued
+	 */
+	private int lastSequence;
+
+	/**
+	 * Time the speaker's last frame arrived, 0 once its talk spurt has ended
+	 */
+	private volatile long lastFrameTime;
+
+	/**
+	 * Codec of {@link #decoder}
+	 */
+	private VoiceCodec decoderCodec;
+
+	/**
+	 * Decoder for the speaker's stream
+	 */
+	private VoiceDecoder decoder;
+
+	/**
+	 * The speaker's frame for the current tick, only touched by the mixing thread
+	 */
+	final byte[] current = new byte[AudioConstants.FRAME_SIZE];
+
+	/**
+	 * Does {@link #current} hold a frame this tick
+	 */
+	boolean hasCurrent;
+
+	/**
+	 * Does the listener currently get a mixed stream instead of each speaker separately
+	 */
+	volatile boolean mixing;
+
+	/**
+	 * Ticks the listener has had fewer speakers around than the threshold
+	 */
+	private int quietTicks;
+
+	/**
+	 * Codec of {@link #encoder}, only touched by the mixing thread
+	 */
+	VoiceCodec encoderCodec;
+
+	/**
+	 * Encoder for the listener's mixed stream, only touched by the mixing thread
+	 */
+	VoiceEncoder encoder;
+
+	/**
+	 * Output buffer of {@link #encoder}, only touched by the mixing thread
+	 */
+	byte[] encoded;
+
+	/**
+	 * Sequence number of the next mixed frame sent to the listener, only touched by the mixing thread
+	 */
+	int sequence;
+
+	/**
+	 * Notes that the speaker is talking, and decodes the frame and queues it for mixing if anyone is mixed with it
+	 *
+	 * @param packet frame received from the speaker
+	 * @param decode does a listener currently getting a mixed stream hear the speaker
+	 */
+	synchronized void push(C2SMicPacket packet, boolean decode)
+	{
+		if ((packet.flags & AudioConstants.FLAG_SPURT_END) != 0)
+		{
+			// nothing to mix, the queue just drains
+			lastFrameTime = 0L;
+			return;
+		}
+
+		if (hasSequence && packet.sequence - lastSequence <= 0)
+		{
+			// late or duplicate
+			return;
+		}
+
+		VoiceCodec codec = VoiceCodecs.get(packet.codec);
+		if (codec == null)
+		{
+			return;
+		}
+
+		hasSequence = true;
+		lastSequence = packet.sequence;
+		lastFrameTime = System.currentTimeMillis();
+		if (!decode)
+		{
+			// decoding is the expensive part, and nobody would hear the result
+			return;
+		}
+
+		if (decoderCodec != codec)
+		{
+			decoder = codec.newDecoder();
+			decoderCodec = codec;
+		}
+
+		if (count == QUEUE_FRAMES)
+		{
+			head = (head + 1) % QUEUE_FRAMES;
+			count--;
+		}
+
+		byte[] slot = queue[(head + count) % QUEUE_FRAMES];
+		int length = decoder.decode(packet.data, packet.length, slot);
+		Arrays.fill(slot, length, slot.length, (byte) 0);
+		count++;
+	}
+
+	/**
+	 * Is the speaker talking, whether or not its frames are being decoded
+	 *
+	 * @param now current time in milliseconds
+	 * @return true if a frame arrived recently and the talk spurt hasn't ended
+	 */
+	boolean isTalking(long now)
+	{
+		return now - lastFrameTime < TALK_TIMEOUT;
+	}
+
+	/**
+	 * Moves the next queued frame into {@link #current}, called once per tick
+	 */
+	synchronized void advance()
+	{
+		hasCurrent = false;
+
+		if (!playing)
+		{
+			if (count < PREFETCH_FRAMES)
+			{
+				return;
+			}
+			playing = true;
+		}
+
+		if (count == 0)
+		{
+			// talk spurt ended or the speaker fell behind, prefetch again
+			playing = false;
+			return;
+		}
+
+		System.arraycopy(queue[head], 0, current, 0, current.length);
+		head = (head + 1) % QUEUE_FRAMES;
+		count--;
+		hasCurrent = true;
+	}
+
+	/**
+	 * Decides if the listener should get a mixed stream, switching on straight away when the crowd grows
+	 * and only switching off once it has stayed small for {@link #HOLD_TICKS}
+	 *
+	 * @param speakers  number of speakers the listener can hear this tick
+	 * @param threshold number of speakers at which mixing starts
+	 * @return true if the listener gets a mixed stream
+	 */
+	boolean updateMixing(int speakers, int threshold)
+	{
+		if (speakers >= threshold)
+		{
+			mixing = true;
+			quietTicks = 0;
+		}
+		else if (mixing && ++quietTicks >= HOLD_TICKS)
+		{
+			mixing = false;
+		}
+		return mixing;
+	}
+}
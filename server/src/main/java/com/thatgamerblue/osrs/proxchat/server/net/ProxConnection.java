@@ -0,0 +1,197 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Server;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodecs;
+import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicBundle;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.Getter;
+
+/**
+ * A connection to a client, carrying everything the server knows about that client
+ * <p>
+ * Keeping this on the connection itself means the per-packet auth check and state lookup are plain field reads.
+ */
+public class ProxConnection extends Connection
+{
+	/**
+	 * Buffers bundles are serialized into before they're sent, shared by every connection as one is only borrowed while sending
+	 */
+	private static final ObjectPool<ByteBuffer> bundleFramePool = new ObjectPool<>(
+		16,
+		() -> ByteBuffer.allocate(NetworkHandler.BUFFER_SIZE)
+	);
+
+	/**
+	 * Game state of the client
+	 */
+	@Getter
+	private final ClientState state = new ClientState();
+
+	/**
+	 * Is a nonce waiting to be answered with a C2SAuth
+	 */
+	private final AtomicBoolean awaitingAuth = new AtomicBoolean(false);
+
+	/**
+	 * Nonce sent to the client for it to authenticate with, only valid while {@link #awaitingAuth} is set
+	 */
+	@Getter
+	private volatile int nonce;
+
+	/**
+	 * Has the client successfully authenticated
+	 */
+	@Getter
+	private volatile boolean authenticated;
+
+	/**
+	 * Bitmask of the voice codecs the client understands
+	 */
+	@Getter
+	private volatile int supportedCodecs;
+
+	/**
+	 * Codec the client was asked to send its voice with, and that audio mixed for it is sent with
+	 */
+	@Getter
+	private volatile VoiceCodec codec = VoiceCodecs.PCM;
+
+	/**
+	 * State of the client in the {@link ServerMixer}
+	 */
+	final MixState mix = new MixState();
+
+	/**
+	 * Speakers currently forwarded to the client, when the number forwarded at once is capped
+	 */
+	final ForwardingTable forwarding = new ForwardingTable();
+
+	/**
+	 * Frames relayed to the client that haven't been sent yet. The first frame added to an empty bundle requests a flush, and
+	 * the bundle is sent on the next flush pass of the client's reactor along with every frame added until then. Guarded by
+	 * its own monitor.
+	 */
+	final S2CMicBundle bundle = new S2CMicBundle(ServerNetworkHandler.TCP_BUNDLE_SIZE);
+
+	/**
+	 * Cell of the {@link SpatialIndex} the client is in, only touched by the index
+	 */
+	SpatialIndex.CellKey cell;
+
+	/**
+	 * Keys of the 3x3 block of cells around {@link #cell}, replaced when the client moves to another cell, null while it
+	 * isn't in the index. Written by the index, read by anyone looking for the client's neighbours.
+	 */
+	volatile SpatialIndex.CellKey[] neighbours;
+
+	/**
+	 * Gives the client a nonce to authenticate with
+	 *
+	 * @param nonce nonce sent to the client
+	 */
+	public void issueNonce(int nonce)
+	{
+		this.nonce = nonce;
+		awaitingAuth.set(true);
+	}
+
+	/**
+	 * Invalidates the nonce, so it can only be used for one authentication attempt
+	 *
+	 * @return true if the nonce was still valid
+	 */
+	public boolean consumeNonce()
+	{
+		return awaitingAuth.getAndSet(false);
+	}
+
+	/**
+	 * Records which voice codecs the client understands, so it is only sent audio it can decode
+	 *
+	 * @param supportedCodecs bitmask of codec ids, see {@link VoiceCodecs#supportedMask()}
+	 * @param codec           codec negotiated for the client's voice
+	 */
+	public void setCodecs(int supportedCodecs, VoiceCodec codec)
+	{
+		this.supportedCodecs = supportedCodecs;
+		this.codec = codec;
+	}
+
+	/**
+	 * Is the client currently getting a single mixed stream from the {@link ServerMixer} instead of each speaker separately
+	 *
+	 * @return true if the client's audio is mixed on the server
+	 */
+	public boolean isMixing()
+	{
+		return mix.mixing;
+	}
+
+	/**
+	 * Sends the client the frames bundled for it, if there are any
+	 */
+	void sendBundle()
+	{
+		synchronized (bundle)
+		{
+			if (bundle.count == 0)
+			{
+				return;
+			}
+
+			if (!isConnected())
+			{
+				bundle.clear();
+				return;
+			}
+
+			ByteBuffer frame = bundleFramePool.acquire();
+			frame.clear();
+			try
+			{
+				((Server) getEndPoint()).frameTCP(frame, bundle);
+				if (isUdpRegistered())
+				{
+					sendFramedUDP(frame);
+				}
+				else
+				{
+					// stale audio is dropped rather than queued while a listener's socket is backed up
+					sendFramedTCP(frame, true);
+				}
+			}
+			catch (IOException ex)
+			{
+				ex.printStackTrace();
+			}
+			finally
+			{
+				bundle.clear();
+				bundleFramePool.release(frame);
+			}
+		}
+	}
+
+	/**
+	 * Sends the frames bundled since the flush was requested, on the thread of the client's reactor
+	 */
+	@Override
+	protected void onFlush()
+	{
+		sendBundle();
+	}
+
+	/**
+	 * Marks the client as successfully authenticated
+	 */
+	public void setAuthenticated()
+	{
+		authenticated = true;
+	}
+}
@@ -0,0 +1,28 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import com.esotericsoftware.kryo.io.Output;
+import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import java.util.ArrayList;
+
+/**
+ * Everything relaying one mic packet needs besides the packet itself, borrowed from a pool for the duration of the relay
+ * rather than kept per thread, as a thread per client would otherwise keep one of these for every client
+ */
+class RelayScratch
+{
+	/**
+	 * Clients near the speaker
+	 */
+	final ArrayList<ProxConnection> nearby = new ArrayList<>();
+
+	/**
+	 * The mic packet serialized once, before it's bundled for every listener
+	 */
+	final Output frame = new Output(NetworkHandler.BUFFER_SIZE);
+
+	/**
+	 * Packet the frame is built from
+	 */
+	final S2CMicPacket packet = new S2CMicPacket();
+}
@@ -0,0 +1,122 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import com.esotericsoftware.kryo.util.IntArray;
+import com.esotericsoftware.kryo.util.IntMap;
+import java.util.HashMap;
+
+/**
+ * Interns chatroom names into small integer ids, so comparing rooms on the relay path is a single int comparison
+ * <p>
+ * Rooms are reference counted and their ids are recycled once nobody is in them, so clients making up
+ * room names can't grow the registry forever.
+ */
+public class RoomRegistry
+{
+	/**
+	 * Id used by clients that aren't in any room yet
+	 */
+	public static final int NO_ROOM = -1;
+
+	/**
+	 * Holds the interned rooms by name
+	 */
+	private final HashMap<String, Room> byName = new HashMap<>();
+
+	/**
+	 * Holds the interned rooms by id
+	 */
+	private final IntMap<Room> byId = new IntMap<>();
+
+	/**
+	 * Ids of rooms that have been emptied, ready for reuse
+	 */
+	private final IntArray freeIds = new IntArray();
+
+	/**
+	 * Next never before used id
+	 */
+	private int nextId = 0;
+
+	/**
+	 * Gets the id of a room, creating it if necessary, and adds a reference to it.
+	 * Every call must be paired with a call to {@link #release(int)} once the client leaves the room.
+	 *
+	 * @param name name of the room, null is treated as the empty room
+	 * @return id of the room
+	 */
+	public synchronized int acquire(String name)
+	{
+		if (name == null)
+		{
+			name = "";
+		}
+
+		Room room = byName.get(name);
+		if (room == null)
+		{
+			int id = freeIds.size > 0 ? freeIds.pop() : nextId++;
+			room = new Room(name, id);
+			byName.put(name, room);
+			byId.put(id, room);
+		}
+
+		room.references++;
+		return room.id;
+	}
+
+	/**
+	 * Removes a reference to a room, forgetting the room once nobody references it
+	 *
+	 * @param id id of the room, {@link #NO_ROOM} is ignored
+	 */
+	public synchronized void release(int id)
+	{
+		if (id == NO_ROOM)
+		{
+			return;
+		}
+
+		Room room = byId.get(id);
+		if (room == null || --room.references > 0)
+		{
+			return;
+		}
+
+		byName.remove(room.name);
+		byId.remove(id);
+		freeIds.add(id);
+	}
+
+	/**
+	 * An interned room
+	 */
+	private static class Room
+	{
+		/**
+		 * Name of the room
+		 */
+		final String name;
+
+		/**
+		 * Interned id of the room
+		 */
+		final int id;
+
+		/**
+		 * Number of clients in the room
+		 */
+		int references;
+
+		/**
+		 * Creates a room with no references
+		 *
+		 * @param name name of the room
+		 * @param id   interned id of the room
+		 */
+		Room(String name, int id)
+		{
+			this.name = name;
+			this.id = id;
+		}
+	}
+}
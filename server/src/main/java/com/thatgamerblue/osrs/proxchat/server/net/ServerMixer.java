@@ -0,0 +1,226 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Server;
+import com.thatgamerblue.osrs.proxchat.common.audio.Attenuation;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Mixes everyone a listener can hear into a single stream, for listeners surrounded by so many speakers that forwarding each
+ * of them separately costs more than decoding, mixing and encoding on the server
+ * <p>
+ * Every {@link AudioConstants#MS_PER_PACKET} the mixer takes one frame from each speaker, then for each listener in a crowd
+ * sums the frames of the speakers in range, attenuated by distance the same way the client would, and sends the result as
+ * one frame. {@link #tick(Connection[], int)} must only ever be called from one thread at a time, {@link #push} from any.
+ * <p>
+ * Whether a listener is in a crowd is decided by how many speakers around them are talking, which costs nothing per frame.
+ * Only speakers heard by a listener that gets a mixed stream have their frames decoded.
+ */
+public class ServerMixer
+{
+	/**
+	 * Session id of the mixed stream, kryonet never gives a connection id 0
+	 */
+	public static final int MIX_DECODER = 0;
+
+	/**
+	 * Number of samples in one frame
+	 */
+	private static final int FRAME_SAMPLES = AudioConstants.FRAME_SIZE / 2;
+
+	/**
+	 * Holds the positions of clients, to find the speakers around a listener
+	 */
+	private final SpatialIndex spatialIndex;
+
+	/**
+	 * Scratch space for collecting the speakers around a listener
+	 */
+	private final ArrayList<ProxConnection> nearby = new ArrayList<>();
+
+	/**
+	 * Sum of the speakers' samples for the listener being mixed
+	 */
+	private final float[] mix = new float[FRAME_SAMPLES];
+
+	/**
+	 * Mixed frame as 16-bit pcm
+	 */
+	private final byte[] pcm = new byte[AudioConstants.FRAME_SIZE];
+
+	/**
+	 * Packet the mixed frames are sent in
+	 */
+	private final S2CMicPacket packet = new S2CMicPacket();
+
+	/**
+	 * Scratch space for serializing {@link #packet} when it's sent over tcp
+	 */
+	private final ByteBuffer tcpFrame = ByteBuffer.allocate(NetworkHandler.BUFFER_SIZE);
+
+	/**
+	 * Creates a mixer
+	 *
+	 * @param spatialIndex index holding the positions of clients
+	 */
+	public ServerMixer(SpatialIndex spatialIndex)
+	{
+		this.spatialIndex = spatialIndex;
+	}
+
+	/**
+	 * Notes a frame from a speaker, and queues it to be mixed in on an upcoming tick if anyone is mixed with the speaker
+	 *
+	 * @param sender connection the frame was received from
+	 * @param packet frame to queue, only read during this call
+	 * @param decode does a listener currently getting a mixed stream hear the speaker
+	 */
+	public void push(ProxConnection sender, C2SMicPacket packet, boolean decode)
+	{
+		sender.mix.push(packet, decode);
+	}
+
+	/**
+	 * Mixes and sends one frame to every listener in a crowd, called once per {@link AudioConstants#MS_PER_PACKET}
+	 *
+	 * @param connections every connection to the server
+	 * @param threshold   number of speakers a listener has to be able to hear at once to get a mixed stream
+	 */
+	public void tick(Connection[] connections, int threshold)
+	{
+		long now = System.currentTimeMillis();
+		boolean anyTalking = false;
+		for (Connection connection : connections)
+		{
+			MixState mix = ((ProxConnection) connection).mix;
+			mix.advance();
+			anyTalking |= mix.isTalking(now);
+		}
+
+		for (Connection connection : connections)
+		{
+			ProxConnection listener = (ProxConnection) connection;
+			if (!anyTalking)
+			{
+				// nobody to look for around anyone, just let the crowds wind down
+				listener.mix.updateMixing(0, threshold);
+			}
+			else if (listener.isAuthenticated() && listener.getState().isInitialized())
+			{
+				mixFor(listener, threshold, now);
+			}
+		}
+	}
+
+	/**
+	 * Mixes the frames of the speakers around a listener, and sends the result if the listener is in a crowd
+	 *
+	 * @param listener  listener to mix for
+	 * @param threshold number of speakers at which mixing starts
+	 * @param now       current time in milliseconds
+	 */
+	private void mixFor(ProxConnection listener, int threshold, long now)
+	{
+		ClientState listenerState = listener.getState();
+		nearby.clear();
+		spatialIndex.collectNearby(listener, nearby);
+
+		Arrays.fill(mix, 0f);
+		int speakers = 0;
+		for (int i = 0; i < nearby.size(); i++)
+		{
+			ProxConnection speaker = nearby.get(i);
+			MixState speakerMix = speaker.mix;
+			if (speaker == listener || !speakerMix.isTalking(now))
+			{
+				continue;
+			}
+
+			int dist = speaker.getState().distanceTo(listenerState);
+			if (dist > AudioConstants.MAX_DISTANCE)
+			{
+				continue;
+			}
+
+			speakers++;
+			if (!speakerMix.hasCurrent)
+			{
+				continue;
+			}
+
+			float gain = Attenuation.gain(dist, 1f);
+			if (gain <= 0f)
+			{
+				continue;
+			}
+
+			byte[] frame = speakerMix.current;
+			for (int j = 0; j < FRAME_SAMPLES; j++)
+			{
+				mix[j] += (short) ((frame[j * 2 + 1] & 0xff) << 8 | frame[j * 2] & 0xff) * gain;
+			}
+		}
+
+		// don't keep disconnected clients reachable through the scratch list
+		nearby.clear();
+
+		MixState listenerMix = listener.mix;
+		if (!listenerMix.updateMixing(speakers, threshold) || speakers == 0)
+		{
+			return;
+		}
+
+		for (int i = 0; i < FRAME_SAMPLES; i++)
+		{
+			int sample = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+			pcm[i * 2] = (byte) sample;
+			pcm[i * 2 + 1] = (byte) (sample >> 8);
+		}
+
+		VoiceCodec codec = listener.getCodec();
+		if (listenerMix.encoderCodec != codec)
+		{
+			listenerMix.encoder = codec.newEncoder();
+			listenerMix.encoded = new byte[codec.getMaxEncodedSize(pcm.length)];
+			listenerMix.encoderCodec = codec;
+		}
+
+		packet.decoder = MIX_DECODER;
+		packet.codec = codec.getId();
+		packet.flags = 0;
+		packet.sequence = listenerMix.sequence++;
+		packet.timestamp = (int) System.currentTimeMillis();
+		packet.data = listenerMix.encoded;
+		packet.length = listenerMix.encoder.encode(pcm, pcm.length, listenerMix.encoded);
+		// distance attenuation has already been applied
+		packet.distance = 0;
+
+		if (listener.isUdpRegistered())
+		{
+			listener.sendUDP(packet);
+		}
+		else
+		{
+			try
+			{
+				tcpFrame.clear();
+				((Server) listener.getEndPoint()).frameTCP(tcpFrame, packet);
+			}
+			catch (IOException ex)
+			{
+				ex.printStackTrace();
+				return;
+			}
+			// stale audio is dropped rather than queued while a listener's socket is backed up
+			listener.sendFramedTCP(tcpFrame, true);
+		}
+	}
+}
@@ -1,30 +1,41 @@
 package com.thatgamerblue.osrs.proxchat.server.net;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.FrameworkMessage;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
 import com.google.common.base.Strings;
 import com.google.common.hash.Hashing;
+import com.thatgamerblue.osrs.proxchat.common.audio.Attenuation;
 import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.PcmCodec;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodecs;
 import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SAuth;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SMicPacket;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SUpdatePacket;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CAuthReq;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CCodec;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CKillDecoder;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUdpReq;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUpdateRate;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUpdateReq;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Objects;
 import java.util.Random;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
@@ -35,33 +46,69 @@ import java.util.function.Supplier;
  */
 public class ServerNetworkHandler extends NetworkHandler
 {
+	/**
+	 * Most bytes of frames bundled into one message to a client on tcp
+	 */
+	static final int TCP_BUNDLE_SIZE = 4096;
+
+	/**
+	 * Most bytes of frames bundled into one datagram, small enough that the datagram isn't fragmented on a typical network
+	 */
+	private static final int UDP_BUNDLE_SIZE = 1200;
+
+	/**
+	 * Longest time {@link #shutdown()} waits for the executor's running tasks to finish, in milliseconds
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 5000;
+
 	/**
 	 * A secure random instance used for generating nonces
 	 */
 	private static Random random;
 
 	/**
-	 * Holds clients that are waiting for authentication
+	 * Interns the names of the chatrooms clients are in
+	 */
+	private static final RoomRegistry roomRegistry = new RoomRegistry();
+
+	/**
+	 * Holds the positions of clients so mic packets only need to check clients nearby
 	 */
-	private static final ConcurrentHashMap<Integer, Integer> nonceMap = new ConcurrentHashMap<>();
+	private static final SpatialIndex spatialIndex = new SpatialIndex();
 
 	/**
-	 * Holds clients that are authenticated
+	 * Scratch space for relaying mic packets, one borrowed by each relay in progress
 	 */
-	private static final CopyOnWriteArrayList<Integer> authenticatedClients = new CopyOnWriteArrayList<>();
+	private static final ObjectPool<RelayScratch> relayScratchPool = new ObjectPool<>(64, RelayScratch::new);
 
 	/**
-	 * Holds game states of clients
+	 * Holds incoming mic packets, so the audio payload can be relayed without allocating anything per frame
 	 */
-	private static final ConcurrentHashMap<Integer, ClientState> clientStates = new ConcurrentHashMap<>();
+	private static final ObjectPool<C2SMicPacket> micPacketPool = new ObjectPool<>(
+		256,
+		() -> new C2SMicPacket(PcmCodec.ID, new byte[AudioConstants.FRAME_SIZE], 0, 0, 0, 0, 0)
+	);
 
 	/**
-	 * Holds an executor used for doing time-based cleanup e.g. of the nonce map
+	 * Mixes audio on the server for listeners in a crowd
 	 */
-	private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private static final ServerMixer mixer = new ServerMixer(spatialIndex);
+
+	/**
+	 * Holds an executor used for doing time-based cleanup e.g. of expired nonces
+	 */
+	private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+
+	/**
+	 * Ticks the {@link #mixer} on a thread of its own, so a slow tick holds up nothing else
+	 */
+	private static final ScheduledThreadPoolExecutor mixExecutor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "Prox-Mixer"));
 
 	static
 	{
+		// nonce expiry is pointless once the server is gone, don't hold up shutdown waiting for it
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
 		try
 		{
 			random = SecureRandom.getInstance("SHA1PRNG");
@@ -84,11 +131,56 @@ public class ServerNetworkHandler extends NetworkHandler
 	 */
 	private final Supplier<Integer> port;
 
+	/**
+	 * Holds the UDP port for the server to carry voice over, 0 for TCP only
+	 */
+	private final Supplier<Integer> udpPort;
+
 	/**
 	 * Holds the pre-shared key of the server
 	 */
 	private final Supplier<String> password;
 
+	/**
+	 * Holds the number of threads to spread connections over, 0 for one per available processor
+	 */
+	private final Supplier<Integer> reactorThreads;
+
+	/**
+	 * Holds the number of threads to handle messages on, 0 for one per available processor
+	 */
+	private final Supplier<Integer> workerThreads;
+
+	/**
+	 * Holds whether each client is handled on a virtual thread of its own instead of the worker threads
+	 */
+	private final Supplier<Boolean> virtualThreads;
+
+	/**
+	 * Holds the number of speakers a listener has to hear at once to get a mixed stream, 0 to never mix
+	 */
+	private final Supplier<Integer> mixingThreshold;
+
+	/**
+	 * Holds the most speakers forwarded to a listener at once, the loudest at the listener win, 0 for no limit
+	 */
+	private final Supplier<Integer> maxForwardedSpeakers;
+
+	/**
+	 * Holds the number of game ticks between position updates from each client
+	 */
+	private final Supplier<Integer> updateIntervalTicks;
+
+	/**
+	 * Hands messages to the worker threads, created along with the server
+	 */
+	private MessageDispatcher dispatcher;
+
+	/**
+	 * Task ticking the {@link #mixer}, null while server side mixing is off
+	 */
+	private volatile ScheduledFuture<?> mixTask;
+
 	/**
 	 * Are we shutting down?
 	 */
@@ -99,20 +191,41 @@ public class ServerNetworkHandler extends NetworkHandler
 	 * Handles all connections to clients.
 	 * Mainly just acts as a relay for audio.
 	 *
-	 * @param bindAddress address supplier, see {@link #bindAddress}
-	 * @param port        port to bind to
-	 * @param password    password to require clients to provide
+	 * @param bindAddress          address supplier, see {@link #bindAddress}
+	 * @param port                 port to bind to
+	 * @param udpPort              UDP port to carry voice over, 0 for TCP only
+	 * @param password             password to require clients to provide
+	 * @param reactorThreads       number of threads to spread connections over, 0 for one per available processor
+	 * @param workerThreads        number of threads to handle messages on, 0 for one per available processor
+	 * @param virtualThreads       handle each client on a virtual thread of its own instead, if the JVM supports them
+	 * @param mixingThreshold      number of speakers a listener has to hear at once to get a mixed stream, 0 to never mix
+	 * @param maxForwardedSpeakers most speakers forwarded to a listener at once, 0 for no limit
+	 * @param updateIntervalTicks  game ticks between position updates from each client
 	 */
 	public ServerNetworkHandler(
 		Supplier<String> bindAddress,
 		Supplier<Integer> port,
-		Supplier<String> password
+		Supplier<Integer> udpPort,
+		Supplier<String> password,
+		Supplier<Integer> reactorThreads,
+		Supplier<Integer> workerThreads,
+		Supplier<Boolean> virtualThreads,
+		Supplier<Integer> mixingThreshold,
+		Supplier<Integer> maxForwardedSpeakers,
+		Supplier<Integer> updateIntervalTicks
 	)
 	{
 		super(Mode.SERVER);
 		this.bindAddress = bindAddress;
 		this.port = port;
+		this.udpPort = udpPort;
 		this.password = password;
+		this.reactorThreads = reactorThreads;
+		this.workerThreads = workerThreads;
+		this.virtualThreads = virtualThreads;
+		this.mixingThreshold = mixingThreshold;
+		this.maxForwardedSpeakers = maxForwardedSpeakers;
+		this.updateIntervalTicks = updateIntervalTicks;
 	}
 
 	/**
@@ -137,6 +250,95 @@ public class ServerNetworkHandler extends NetworkHandler
 		netServer.sendToAllExceptTCP(connection, object);
 	}
 
+	/**
+	 * Creates a server whose connections carry the auth status and game state of their client,
+	 * spread over {@link #reactorThreads} threads and reading and writing through pooled direct buffers. Tcp writes are corked,
+	 * so a voice frame relayed to many listeners is written to each of them once per reactor iteration rather than once per send.
+	 *
+	 * @return a new, unstarted server
+	 */
+	@Override
+	protected Server createServer()
+	{
+		int reactors = reactorThreads.get();
+		if (reactors <= 0)
+		{
+			reactors = Runtime.getRuntime().availableProcessors();
+		}
+
+		Server server = new Server(BUFFER_SIZE, BUFFER_SIZE, createSerialization(), reactors)
+		{
+			@Override
+			protected Connection newConnection()
+			{
+				return new ProxConnection();
+			}
+		};
+		// saves a copy through the jdk's temporary direct buffers on every socket read and write
+		server.setDirectBuffers(true);
+		// everything sent to a connection while handling one batch of reads goes out in one write
+		server.setCorked(true);
+		return server;
+	}
+
+	/**
+	 * Moves handling every event off the network threads, onto {@link #workerThreads} workers or, with {@link #virtualThreads},
+	 * a virtual thread per client. Each client is always handled by the same thread, so its messages are handled in order.
+	 * Mic packets are dropped when a worker falls behind.
+	 *
+	 * @param listener listener calling the handler's event methods
+	 * @return a dispatcher handing the events to the workers
+	 */
+	@Override
+	protected Listener wrapListener(Listener listener)
+	{
+		if (virtualThreads.get())
+		{
+			ThreadFactory factory = MessageDispatcher.virtualThreadFactory("Prox-Client-");
+			if (factory != null)
+			{
+				dispatcher = new MessageDispatcher(listener, factory, message -> message instanceof C2SMicPacket, this::releaseMessage);
+				return dispatcher;
+			}
+			System.out.println("Virtual threads need Java 21 or newer, handling messages on worker threads instead");
+		}
+
+		int workers = workerThreads.get();
+		if (workers <= 0)
+		{
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+
+		dispatcher = new MessageDispatcher(listener, workers, message -> message instanceof C2SMicPacket, this::releaseMessage);
+		return dispatcher;
+	}
+
+	/**
+	 * Gives back the pooled buffers of a message that won't be handled
+	 *
+	 * @param message message that was dropped
+	 */
+	private void releaseMessage(Object message)
+	{
+		if (message instanceof C2SMicPacket)
+		{
+			micPacketPool.release((C2SMicPacket) message);
+		}
+	}
+
+	/**
+	 * Registers the network types, then swaps in a serializer that reads mic packets into pooled buffers.
+	 * The server never decodes the audio, it only needs somewhere to hold it until it's copied out to the listeners.
+	 *
+	 * @param kryo kryo instance to register the types with
+	 */
+	@Override
+	protected void registerTypes(Kryo kryo)
+	{
+		super.registerTypes(kryo);
+		kryo.register(C2SMicPacket.class, new C2SMicPacket.PooledSerializer(micPacketPool));
+	}
+
 	/**
 	 * Opens the listen server on the address supplied by {@link #bindAddress}
 	 *
@@ -147,7 +349,42 @@ public class ServerNetworkHandler extends NetworkHandler
 	{
 		shuttingDown.set(false);
 		netServer.start();
-		netServer.bind(new InetSocketAddress(bindAddress.get(), port.get()), null);
+		InetSocketAddress udpAddress = null;
+		if (udpPort.get() > 0)
+		{
+			udpAddress = new InetSocketAddress(bindAddress.get(), udpPort.get());
+		}
+		netServer.bind(new InetSocketAddress(bindAddress.get(), port.get()), udpAddress);
+		System.out.println("Listening with " + netServer.getReactorCount() + " reactor thread(s)");
+
+		int threshold = mixingThreshold.get();
+		if (threshold > 0)
+		{
+			mixTask = mixExecutor.scheduleAtFixedRate(
+				() -> tickMixer(threshold),
+				AudioConstants.MS_PER_PACKET,
+				AudioConstants.MS_PER_PACKET,
+				TimeUnit.MILLISECONDS
+			);
+			System.out.println("Mixing audio for listeners who can hear " + threshold + " or more speakers at once");
+		}
+	}
+
+	/**
+	 * Runs one tick of the {@link #mixer}, an exception would stop the scheduled task so it is only logged
+	 *
+	 * @param threshold number of speakers a listener has to hear at once to get a mixed stream
+	 */
+	private void tickMixer(int threshold)
+	{
+		try
+		{
+			mixer.tick(netServer.getConnections(), threshold);
+		}
+		catch (RuntimeException ex)
+		{
+			ex.printStackTrace();
+		}
 	}
 
 	/**
@@ -158,20 +395,21 @@ public class ServerNetworkHandler extends NetworkHandler
 	@Override
 	protected void onConnected(Connection connection)
 	{
+		ProxConnection client = (ProxConnection) connection;
 		int nonce = random.nextInt();
-		nonceMap.put(connection.getID(), nonce);
+		client.issueNonce(nonce);
 		System.out.println("Received connection w/ id " + connection.getID() + ", sending back nonce " + nonce);
 		executor.schedule(() ->
 		{
-			nonceMap.remove(connection.getID());
+			client.consumeNonce();
 
-			if (connection.isConnected() && !authenticatedClients.contains(connection.getID()))
+			if (client.isConnected() && !client.isAuthenticated())
 			{
-				connection.close();
+				client.close();
 			}
 
 		}, 30, TimeUnit.SECONDS);
-		sendTCP(connection.getID(), new S2CAuthReq(nonce));
+		client.sendTCP(new S2CAuthReq(nonce));
 	}
 
 	/**
@@ -189,17 +427,18 @@ public class ServerNetworkHandler extends NetworkHandler
 			return;
 		}
 
+		ProxConnection client = (ProxConnection) connection;
+
 		if (message instanceof C2SAuth)
 		{
-			Integer nonce;
-			if ((nonce = nonceMap.get(connection.getID())) == null)
+			if (!client.consumeNonce())
 			{
 				System.out.println("Closing connection with " + connection.getID() + " due to lack of nonce");
 				connection.close();
 				return;
 			}
 
-			nonceMap.remove(connection.getID());
+			int nonce = client.getNonce();
 
 			// if password is not empty, do authorization
 			if (!Strings.isNullOrEmpty(password.get()))
@@ -240,18 +479,29 @@ public class ServerNetworkHandler extends NetworkHandler
 				}
 			}
 
-			authenticatedClients.add(connection.getID());
+			int codecs = ((C2SAuth) message).codecs | 1 << PcmCodec.ID;
+			VoiceCodec codec = VoiceCodecs.negotiate(codecs);
+			client.setCodecs(codecs, codec);
+			client.setAuthenticated();
 
-			sendTCP(connection.getID(), new S2CUpdateReq());
+			client.sendTCP(new S2CUpdateRate(Math.max(1, updateIntervalTicks.get())));
+			client.sendTCP(new S2CUpdateReq());
+			client.sendTCP(new S2CCodec(codec.getId()));
+
+			// voice can move to udp, everything else stays on tcp
+			if (udpPort.get() > 0)
+			{
+				client.sendTCP(new S2CUdpReq(udpPort.get()));
+			}
 
-			System.out.println("Client " + connection.getID() + " successfully authorized.");
+			System.out.println("Client " + connection.getID() + " successfully authorized, sending voice as " + codec.getName());
 
 			// because of this return we can now hoist out the auth check
 			return;
 		}
 
 		// authentication check
-		if (!authenticatedClients.contains(connection.getID()))
+		if (!client.isAuthenticated())
 		{
 			connection.close();
 			return;
@@ -259,56 +509,202 @@ public class ServerNetworkHandler extends NetworkHandler
 
 		if (message instanceof C2SUpdatePacket)
 		{
-			C2SUpdatePacket update = (C2SUpdatePacket) message;
-			ClientState oldState;
-			UUID uuid;
-			if ((oldState = clientStates.get(connection.getID())) != null)
+			applyUpdate(client, (C2SUpdatePacket) message);
+		}
+		else if (message instanceof C2SMicPacket)
+		{
+			C2SMicPacket micPacket = (C2SMicPacket) message;
+			try
 			{
-				uuid = oldState.getUuid();
+				relayMicPacket(client, micPacket);
 			}
-			else
+			finally
 			{
-				uuid = UUID.randomUUID();
+				micPacketPool.release(micPacket);
 			}
+		}
+	}
 
-			clientStates.put(connection.getID(), new ClientState(uuid, update.x, update.y, update.plane, update.world, update.gameState, update.room));
+	/**
+	 * Applies the fields present in an update to the state of the client that sent it
+	 *
+	 * @param client connection the update was received from
+	 * @param update update to apply, a delta against the previous update from the same client. Position deltas are ignored
+	 *               until the client has sent an absolute position.
+	 */
+	private void applyUpdate(ProxConnection client, C2SUpdatePacket update)
+	{
+		ClientState state = client.getState();
+
+		if (update.has(C2SUpdatePacket.ROOM) && !Objects.equals(state.getRoomName(), update.room))
+		{
+			int roomId = roomRegistry.acquire(update.room);
+			roomRegistry.release(state.getRoomId());
+			state.setRoom(update.room, roomId);
 		}
-		else if (message instanceof C2SMicPacket)
+
+		int x = state.getX();
+		int y = state.getY();
+		if (update.has(C2SUpdatePacket.ABSOLUTE))
 		{
-			C2SMicPacket micPacket = (C2SMicPacket) message;
+			x = update.x;
+			y = update.y;
+			state.setPositioned();
+		}
+		// a delta sent before the client's first full update is against a state we never had, so it's ignored
+		else if (update.has(C2SUpdatePacket.POSITION) && state.isPositioned())
+		{
+			x += update.x;
+			y += update.y;
+		}
 
-			if (micPacket.data == null)
-			{
-				return;
-			}
+		state.update(
+			x,
+			y,
+			update.has(C2SUpdatePacket.PLANE) ? update.plane : state.getPlane(),
+			update.has(C2SUpdatePacket.WORLD) ? update.world : state.getWorld(),
+			update.has(C2SUpdatePacket.GAME_STATE) ? update.gameState : state.getGameState()
+		);
+		spatialIndex.update(client);
+	}
+
+	/**
+	 * Bundles the audio in a mic packet for everyone in range of the sender, to be sent on the next flush pass of each
+	 * listener's reactor, and hands it to the {@link #mixer} while server side mixing is on
+	 *
+	 * @param sender    connection the packet was received from
+	 * @param micPacket packet to relay, only valid until this method returns
+	 */
+	private void relayMicPacket(ProxConnection sender, C2SMicPacket micPacket)
+	{
+		if (micPacket.data == null || !VoiceCodecs.supports(sender.getSupportedCodecs(), micPacket.codec))
+		{
+			return;
+		}
 
-			int sender = connection.getID();
-			ClientState senderState = clientStates.get(sender);
+		ClientState senderState = sender.getState();
 
-			if (senderState == null)
-			{
-				sendTCP(sender, new S2CUpdateReq());
-				return;
-			}
+		if (!senderState.isInitialized())
+		{
+			sender.sendTCP(new S2CUpdateReq());
+			return;
+		}
 
-			for (Map.Entry<Integer, ClientState> e : clientStates.entrySet())
+		RelayScratch scratch = relayScratchPool.acquire();
+		ArrayList<ProxConnection> nearby = scratch.nearby;
+		spatialIndex.collectNearby(sender, nearby);
+
+		boolean spurtEnd = (micPacket.flags & AudioConstants.FLAG_SPURT_END) != 0;
+		int maxForwarded = maxForwardedSpeakers.get();
+		long now = maxForwarded > 0 ? System.currentTimeMillis() : 0L;
+
+		// the packet is only serialized once, then the distance is patched in as it's bundled for each listener
+		Output frame = null;
+		boolean mixed = false;
+		try
+		{
+			for (int i = 0; i < nearby.size(); i++)
 			{
-				int k = e.getKey();
-				ClientState v = e.getValue();
-				if (k == sender)
+				ProxConnection listener = nearby.get(i);
+				if (listener == sender)
 				{
 					continue;
 				}
 
 				int dist;
-				if ((dist = senderState.distanceTo(v)) > AudioConstants.MAX_DISTANCE)
+				if ((dist = senderState.distanceTo(listener.getState())) > AudioConstants.MAX_DISTANCE)
+				{
+					continue;
+				}
+
+				// listeners in a crowd hear this speaker through the mixer instead
+				if (listener.isMixing())
+				{
+					mixed = true;
+					continue;
+				}
+
+				if (!VoiceCodecs.supports(listener.getSupportedCodecs(), micPacket.codec))
 				{
 					continue;
 				}
 
-				sendTCP(k, new S2CMicPacket(senderState.getUuid(), micPacket.data, dist));
+				if (maxForwarded > 0)
+				{
+					// the end of a spurt frees the speaker's slot, and is only worth sending to listeners that got the spurt
+					boolean forward = spurtEnd
+						? listener.forwarding.release(sender.getID())
+						: listener.forwarding.admit(sender.getID(), levelAt(micPacket.energy, dist), now, maxForwarded);
+					if (!forward)
+					{
+						continue;
+					}
+				}
+
+				if (frame == null)
+				{
+					frame = scratch.frame;
+					frame.setPosition(0);
+					S2CMicPacket relayPacket = scratch.packet;
+					relayPacket.decoder = sender.getID();
+					relayPacket.codec = micPacket.codec;
+					relayPacket.flags = micPacket.flags;
+					relayPacket.sequence = micPacket.sequence;
+					relayPacket.timestamp = micPacket.timestamp;
+					relayPacket.data = micPacket.data;
+					relayPacket.length = micPacket.length;
+					relayPacket.distance = dist;
+					S2CMicPacket.writeFrame(frame, relayPacket);
+					// don't hold on to the pooled buffer
+					relayPacket.data = null;
+				}
+
+				int limit = listener.isUdpRegistered() ? UDP_BUNDLE_SIZE : TCP_BUNDLE_SIZE;
+				synchronized (listener.bundle)
+				{
+					boolean flushRequested = listener.bundle.count > 0;
+					if (!listener.bundle.append(frame.getBuffer(), frame.position(), dist, limit))
+					{
+						// full, send what's bundled so far early
+						listener.sendBundle();
+						listener.bundle.append(frame.getBuffer(), frame.position(), dist, limit);
+					}
+					if (!flushRequested)
+					{
+						// nothing was waiting, so the frame goes out as soon as the reactor gets to it
+						listener.requestFlush();
+					}
+				}
 			}
 		}
+		finally
+		{
+			// don't keep disconnected clients reachable through the scratch list
+			nearby.clear();
+			relayScratchPool.release(scratch);
+		}
+
+		if (mixTask != null)
+		{
+			mixer.push(sender, micPacket, mixed);
+		}
+	}
+
+	/**
+	 * Works out how loud a frame is at a listener
+	 *
+	 * @param energy   loudness of the frame as sent by the speaker, see {@link C2SMicPacket#energy}
+	 * @param distance distance between the speaker and the listener
+	 * @return loudness at the listener, in db relative to full scale minus 127
+	 */
+	private static float levelAt(int energy, int distance)
+	{
+		float gain = Attenuation.gain(distance, 1f);
+		if (gain <= 0f)
+		{
+			return -Float.MAX_VALUE;
+		}
+		return energy + (float) (20d * Math.log10(gain));
 	}
 
 	/**
@@ -320,14 +716,30 @@ public class ServerNetworkHandler extends NetworkHandler
 	protected void onDisconnected(Connection connection)
 	{
 		System.out.println("Client " + connection.getID() + " disconnected.");
-		nonceMap.remove(connection.getID());
-		authenticatedClients.remove((Object) connection.getID());
-		ClientState state = clientStates.remove(connection.getID());
+		if (connection.getDroppedTcpFrames() > 0)
+		{
+			System.out.println("Dropped " + connection.getDroppedTcpFrames() + " voice frames for client " + connection.getID() + " over tcp");
+		}
+		ProxConnection client = (ProxConnection) connection;
+		client.consumeNonce();
+		ClientState state = client.getState();
+		spatialIndex.remove(client);
+		roomRegistry.release(state.getRoomId());
+		state.setRoom(null, RoomRegistry.NO_ROOM);
 		if (!shuttingDown.get())
 		{
-			if (state != null)
+			if (state.isInitialized())
 			{
-				sendTCPToAllExcept(connection.getID(), new S2CKillDecoder(state.getUuid()));
+				// the client's last frames may still be waiting in other listeners' bundles, send them ahead of the kill
+				// or the listener would recreate the decoder for a speaker that's already gone
+				for (Connection other : netServer.getConnections())
+				{
+					if (other != connection)
+					{
+						((ProxConnection) other).sendBundle();
+					}
+				}
+				sendTCPToAllExcept(connection.getID(), new S2CKillDecoder(connection.getID()));
 			}
 		}
 	}
@@ -339,19 +751,48 @@ public class ServerNetworkHandler extends NetworkHandler
 	@Override
 	public void disconnect()
 	{
+		ScheduledFuture<?> mixTask = this.mixTask;
+		if (mixTask != null)
+		{
+			mixTask.cancel(false);
+			this.mixTask = null;
+		}
 		netServer.stop();
 	}
 
 	/**
 	 * Destroys any long-lasting instances this class holds. Will not be reusable after this is called.
 	 * Also calls {@link #disconnect()}
+	 * <p>
+	 * Shuts down in order, waiting at each step: the network first so nothing new arrives, then the threads handling
+	 * messages so nothing new is scheduled, then the executor.
 	 */
 	public void shutdown()
 	{
 		System.out.println("Shutting down network...");
 		shuttingDown.set(true);
 		disconnect();
-		System.out.println("Shutting down executor...");
-		executor.shutdown();
+		try
+		{
+			if (dispatcher != null)
+			{
+				System.out.println("Waiting for message handlers...");
+				dispatcher.close();
+			}
+			System.out.println("Shutting down executor...");
+			mixExecutor.shutdown();
+			executor.shutdown();
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS))
+			{
+				System.out.println("Executor did not finish in time, abandoning its tasks");
+				executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			mixExecutor.shutdownNow();
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
 	}
 }
@@ -0,0 +1,251 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Value;
+
+/**
+ * Spatial index of client positions, used to find who can hear a speaker without checking every connected client.
+ * <p>
+ * Clients are bucketed by world, room and a grid of cells {@link AudioConstants#MAX_DISTANCE} wide, so anyone within
+ * hearing range of a client is always in the same cell or one of the eight cells surrounding it.
+ * <p>
+ * Looking up who's nearby happens for every relayed frame, so it allocates nothing: the keys of the cells around a client are
+ * worked out when it moves to another cell, and each cell's members are an array that's replaced when a client comes or goes.
+ */
+public class SpatialIndex
+{
+	/**
+	 * Width and height of a cell, in local units
+	 */
+	private static final int CELL_SIZE = AudioConstants.MAX_DISTANCE;
+
+	/**
+	 * Holds the connections of the clients in each occupied cell
+	 */
+	private final ConcurrentHashMap<CellKey, Cell> cells = new ConcurrentHashMap<>();
+
+	/**
+	 * Moves a client to the cell matching its current state.
+	 * Clients that can't hear or be heard by anybody, e.g. because they're logged out, are removed from the index.
+	 * Must only be called from the connection's own update thread.
+	 *
+	 * @param connection connection of the client
+	 */
+	public void update(ProxConnection connection)
+	{
+		ClientState state = connection.getState();
+		CellKey newCell = isAudible(state) ? cellOf(state) : null;
+		CellKey oldCell = connection.cell;
+
+		if (Objects.equals(newCell, oldCell))
+		{
+			return;
+		}
+
+		connection.cell = newCell;
+		connection.neighbours = newCell != null ? neighboursOf(newCell) : null;
+
+		if (oldCell != null)
+		{
+			removeFromCell(oldCell, connection);
+		}
+
+		if (newCell != null)
+		{
+			cells.compute(newCell, (k, v) ->
+			{
+				if (v == null)
+				{
+					v = new Cell();
+				}
+				v.add(connection);
+				return v;
+			});
+		}
+	}
+
+	/**
+	 * Removes a client from the index entirely
+	 *
+	 * @param connection connection of the client
+	 */
+	public void remove(ProxConnection connection)
+	{
+		CellKey oldCell = connection.cell;
+		connection.cell = null;
+		connection.neighbours = null;
+		if (oldCell != null)
+		{
+			removeFromCell(oldCell, connection);
+		}
+	}
+
+	/**
+	 * Collects the connections of every client in the 3x3 block of cells around a client, as of its last {@link #update}.
+	 * The results are candidates only, callers still need to check the exact distance with {@link ClientState#distanceTo(ClientState)}.
+	 *
+	 * @param connection connection of the client to search around
+	 * @param out        list to add the connections to, not cleared first
+	 */
+	public void collectNearby(ProxConnection connection, List<ProxConnection> out)
+	{
+		CellKey[] neighbours = connection.neighbours;
+		if (neighbours == null)
+		{
+			return;
+		}
+
+		for (CellKey key : neighbours)
+		{
+			Cell cell = cells.get(key);
+			if (cell == null)
+			{
+				continue;
+			}
+
+			ProxConnection[] members = cell.members;
+			for (int i = 0; i < members.length; i++)
+			{
+				out.add(members[i]);
+			}
+		}
+	}
+
+	/**
+	 * Removes a client from a cell, dropping the cell if it becomes empty
+	 *
+	 * @param cell       cell to remove from
+	 * @param connection connection of the client
+	 */
+	private void removeFromCell(CellKey cell, ProxConnection connection)
+	{
+		cells.computeIfPresent(cell, (k, v) ->
+		{
+			v.remove(connection);
+			return v.members.length == 0 ? null : v;
+		});
+	}
+
+	/**
+	 * Could this client ever be within range of another, mirrors the early exits in {@link ClientState#distanceTo(ClientState)}
+	 *
+	 * @param state state of the client
+	 * @return true if the client should be indexed
+	 */
+	private static boolean isAudible(ClientState state)
+	{
+		return state.getGameState() >= 25 && state.getGameState() <= 30 && state.getX() != -1;
+	}
+
+	/**
+	 * Gets the key of the cell containing a client
+	 *
+	 * @param state state of the client
+	 * @return key of the cell
+	 */
+	private static CellKey cellOf(ClientState state)
+	{
+		return new CellKey(
+			state.getWorld(),
+			state.getRoomId(),
+			Math.floorDiv(state.getX(), CELL_SIZE),
+			Math.floorDiv(state.getY(), CELL_SIZE)
+		);
+	}
+
+	/**
+	 * Gets the keys of the 3x3 block of cells centred on a cell
+	 *
+	 * @param cell key of the centre cell
+	 * @return keys of the cell and the eight surrounding it
+	 */
+	private static CellKey[] neighboursOf(CellKey cell)
+	{
+		CellKey[] neighbours = new CellKey[9];
+		int i = 0;
+		for (int dx = -1; dx <= 1; dx++)
+		{
+			for (int dy = -1; dy <= 1; dy++)
+			{
+				neighbours[i++] = new CellKey(cell.getWorld(), cell.getRoom(), cell.getCellX() + dx, cell.getCellY() + dy);
+			}
+		}
+		return neighbours;
+	}
+
+	/**
+	 * Clients in one cell of the index. Only changed inside the {@link #cells} compute functions, which run one at a time
+	 * for each cell.
+	 */
+	static class Cell
+	{
+		/**
+		 * Connections of the clients in the cell, replaced rather than modified so readers can iterate it without locking
+		 */
+		volatile ProxConnection[] members = new ProxConnection[0];
+
+		/**
+		 * Adds a client to the cell
+		 *
+		 * @param connection connection of the client
+		 */
+		void add(ProxConnection connection)
+		{
+			ProxConnection[] current = members;
+			ProxConnection[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = connection;
+			members = updated;
+		}
+
+		/**
+		 * Removes a client from the cell
+		 *
+		 * @param connection connection of the client
+		 */
+		void remove(ProxConnection connection)
+		{
+			ProxConnection[] current = members;
+			for (int i = 0; i < current.length; i++)
+			{
+				if (current[i] == connection)
+				{
+					ProxConnection[] updated = Arrays.copyOf(current, current.length - 1);
+					System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+					members = updated;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Identifies a single cell of the index
+	 */
+	@Value
+	static class CellKey
+	{
+		/**
+		 * World the cell is in
+		 */
+		int world;
+
+		/**
+		 * Interned id of the chatroom the cell is in
+		 */
+		int room;
+
+		/**
+		 * X position of the cell, in cells
+		 */
+		int cellX;
+
+		/**
+		 * Y position of the cell, in cells
+		 */
+		int cellY;
+	}
+}
@@ -0,0 +1,100 @@
+package com.thatgamerblue.osrs.proxchat.server.net;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ForwardingTable}
+ */
+public class ForwardingTableTest
+{
+	/**
+	 * Most speakers forwarded at once in these tests
+	 */
+	private static final int LIMIT = 2;
+
+	/**
+	 * Table under test
+	 */
+	private ForwardingTable table;
+
+	/**
+	 * Creates a table before each test with both slots held by speakers 1 and 2 from time 0
+	 */
+	@Before
+	public void setUp()
+	{
+		table = new ForwardingTable();
+		assertTrue(table.admit(1, -20f, 0, LIMIT));
+		assertTrue(table.admit(2, -30f, 0, LIMIT));
+	}
+
+	/**
+	 * Speakers holding a slot keep being forwarded, a newcomer isn't while the slots are full
+	 */
+	@Test
+	public void testFullTableRejectsNewcomer()
+	{
+		assertTrue(table.admit(1, -20f, 100, LIMIT));
+		assertTrue(table.admit(2, -30f, 100, LIMIT));
+		assertFalse(table.admit(3, -40f, 100, LIMIT));
+	}
+
+	/**
+	 * A newcomer only takes the quietest speaker's slot if it's clearly louder
+	 */
+	@Test
+	public void testHysteresis()
+	{
+		// keep both speakers talking past the hold time
+		for (int now = 200; now <= 600; now += 200)
+		{
+			assertTrue(table.admit(1, -20f, now, LIMIT));
+			assertTrue(table.admit(2, -30f, now, LIMIT));
+		}
+
+		// 4 db louder than the quietest isn't enough
+		assertFalse(table.admit(3, -26f, 600, LIMIT));
+		// 10 db louder is
+		assertTrue(table.admit(3, -20f, 600, LIMIT));
+		assertTrue(table.admit(1, -20f, 600, LIMIT));
+		assertFalse(table.admit(2, -30f, 600, LIMIT));
+	}
+
+	/**
+	 * A speaker that was just given its slot can't be replaced however loud the newcomer is
+	 */
+	@Test
+	public void testHoldTime()
+	{
+		assertTrue(table.admit(1, -20f, 200, LIMIT));
+		assertTrue(table.admit(2, -30f, 200, LIMIT));
+		assertFalse(table.admit(3, 0f, 200, LIMIT));
+	}
+
+	/**
+	 * A speaker that stopped sending frames gives up its slot
+	 */
+	@Test
+	public void testSilentSpeakerExpires()
+	{
+		assertTrue(table.admit(1, -20f, 200, LIMIT));
+
+		// speaker 2 was last heard at 0
+		assertTrue(table.admit(3, -40f, 300, LIMIT));
+		assertFalse(table.admit(2, -30f, 300, LIMIT));
+	}
+
+	/**
+	 * Releasing a speaker frees its slot straight away
+	 */
+	@Test
+	public void testRelease()
+	{
+		assertTrue(table.release(2));
+		assertFalse(table.release(2));
+		assertTrue(table.admit(3, -40f, 100, LIMIT));
+	}
+}
@@ -0,0 +1,312 @@
+package com.thatgamerblue.osrs.proxchat.server.test;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.PcmCodec;
+import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SAuth;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SUpdatePacket;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CAuthReq;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicBundle;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUpdateReq;
+import com.thatgamerblue.osrs.proxchat.server.net.ServerNetworkHandler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the server takes on connections and how long it takes to relay a frame, with messages handled either on
+ * the worker threads or on a virtual thread per client.
+ * <p>
+ * Only one mode is measured per run, as the server's executor can't be restarted once a server has shut down. Run it once with
+ * each mode to compare them.
+ * <p>
+ * The default client count is above the 256 carrier threads virtual threads get at most by default, so a worker pinning its
+ * carrier while it waits shows up as a hang rather than going unnoticed.
+ */
+public class RelayBenchmark
+{
+	/**
+	 * Port the server listens on
+	 */
+	private static final int PORT = 30777;
+
+	/**
+	 * Position every client stands at, so every speaker is heard by every client
+	 */
+	private static final int POSITION = 3200 * 128;
+
+	/**
+	 * Seconds the speakers talk for
+	 */
+	private static final int TALK_SECONDS = 5;
+
+	/**
+	 * Main entrypoint of the benchmark
+	 *
+	 * @param args "workers" or "virtual", then optionally the number of clients and of speakers among them, defaulting to 300
+	 *             and 10
+	 * @throws Exception if the server or a client fails to start. It's a benchmark, nobody cares about exceptions.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		boolean virtual = args.length > 0 && args[0].equals("virtual");
+		int clientCount = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+		int speakerCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		ServerNetworkHandler server = new ServerNetworkHandler(
+			() -> "127.0.0.1",
+			() -> PORT,
+			() -> 0,
+			() -> "",
+			() -> 0,
+			() -> 0,
+			() -> virtual,
+			() -> 0,
+			() -> 0,
+			() -> 1
+		);
+		server.initKryonet();
+		server.connect();
+
+		List<BenchClient> clients = new ArrayList<>();
+		CountDownLatch updated = new CountDownLatch(clientCount);
+		for (int i = 0; i < clientCount; i++)
+		{
+			BenchClient client = new BenchClient(updated);
+			client.initKryonet();
+			clients.add(client);
+		}
+
+		ExecutorService connector = Executors.newFixedThreadPool(16);
+		long connectStart = System.nanoTime();
+		for (BenchClient client : clients)
+		{
+			connector.execute(() ->
+			{
+				try
+				{
+					client.connect();
+				}
+				catch (IOException ex)
+				{
+					ex.printStackTrace();
+				}
+			});
+		}
+		if (!updated.await(60, TimeUnit.SECONDS))
+		{
+			System.out.println("Only " + (clientCount - updated.getCount()) + " clients got in, carrying on with those");
+		}
+		long connectElapsed = System.nanoTime() - connectStart;
+		connector.shutdown();
+
+		// let the position updates settle before anyone talks
+		Thread.sleep(500);
+
+		List<BenchClient> speakers = clients.subList(0, speakerCount);
+		byte[] frame = new byte[AudioConstants.FRAME_SIZE];
+		int sequence = 0;
+		long talkEnd = System.currentTimeMillis() + TALK_SECONDS * 1000L;
+		while (System.currentTimeMillis() < talkEnd)
+		{
+			for (BenchClient speaker : speakers)
+			{
+				speaker.send(new C2SMicPacket(PcmCodec.ID, frame, sequence, (int) System.currentTimeMillis(), 100));
+			}
+			sequence++;
+			Thread.sleep(AudioConstants.MS_PER_PACKET);
+		}
+
+		// let the last frames arrive
+		Thread.sleep(500);
+
+		int[] latencies = collectLatencies(clients);
+		System.out.println("mode\tclients\tconnections/s\tframes relayed\tp50 (ms)\tp99 (ms)\tmax (ms)");
+		System.out.println((virtual ? "virtual" : "workers") + "\t" + clientCount + "\t"
+			+ (clientCount - updated.getCount()) * 1_000_000_000L / connectElapsed + "\t" + latencies.length + "\t"
+			+ percentile(latencies, 0.50) + "\t" + percentile(latencies, 0.99) + "\t" + percentile(latencies, 1));
+
+		for (BenchClient client : clients)
+		{
+			client.disconnect();
+		}
+		server.shutdown();
+		System.exit(0);
+	}
+
+	/**
+	 * Gathers the latencies recorded by every client, sorted
+	 *
+	 * @param clients clients to gather from
+	 * @return every recorded latency in milliseconds, in ascending order
+	 */
+	private static int[] collectLatencies(List<BenchClient> clients)
+	{
+		int[] latencies = new int[0];
+		for (BenchClient client : clients)
+		{
+			synchronized (client)
+			{
+				int offset = latencies.length;
+				latencies = Arrays.copyOf(latencies, offset + client.latencyCount);
+				System.arraycopy(client.latencies, 0, latencies, offset, client.latencyCount);
+			}
+		}
+		Arrays.sort(latencies);
+		return latencies;
+	}
+
+	/**
+	 * Picks a percentile out of sorted values
+	 *
+	 * @param sorted   values in ascending order
+	 * @param fraction percentile as a fraction, e.g. 0.99
+	 * @return the value at the percentile, -1 if there are no values
+	 */
+	private static int percentile(int[] sorted, double fraction)
+	{
+		if (sorted.length == 0)
+		{
+			return -1;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+	}
+
+	/**
+	 * Client standing at {@link #POSITION} and recording how long each frame relayed to it took
+	 */
+	static class BenchClient extends NetworkHandler
+	{
+		/**
+		 * Counted down once the server has asked for the client's position, which it does once the client is authenticated
+		 */
+		private final CountDownLatch updated;
+
+		/**
+		 * Latency of each frame received so far, in milliseconds
+		 */
+		private int[] latencies = new int[1024];
+
+		/**
+		 * Number of latencies recorded in {@link #latencies}
+		 */
+		private int latencyCount;
+
+		/**
+		 * Creates a client, {@link #initKryonet()} has to be called before connecting
+		 *
+		 * @param updated counted down once the client is authenticated
+		 */
+		BenchClient(CountDownLatch updated)
+		{
+			super(Mode.CLIENT);
+			this.updated = updated;
+		}
+
+		/**
+		 * Connects to the benchmark server
+		 *
+		 * @throws IOException if connecting fails
+		 */
+		@Override
+		public void connect() throws IOException
+		{
+			netClient.start();
+			netClient.connect(10000, "127.0.0.1", PORT);
+		}
+
+		/**
+		 * Sends a message to the server over tcp
+		 *
+		 * @param message message to send
+		 */
+		void send(Object message)
+		{
+			netClient.sendTCP(message);
+		}
+
+		/**
+		 * Unused
+		 *
+		 * @param connection connection object from kryonet
+		 */
+		@Override
+		protected void onConnected(Connection connection)
+		{
+		}
+
+		/**
+		 * Answers the server's requests and records the latency of relayed frames
+		 *
+		 * @param connection connection object from kryonet
+		 * @param message    message object deserialized by kryonet
+		 */
+		@Override
+		protected void onMessageReceived(Connection connection, Object message)
+		{
+			if (message instanceof S2CAuthReq)
+			{
+				netClient.sendTCP(new C2SAuth(new byte[0], 3));
+			}
+			else if (message instanceof S2CUpdateReq)
+			{
+				netClient.sendTCP(C2SUpdatePacket.full(POSITION, POSITION, 0, 301, 30, ""));
+				updated.countDown();
+			}
+			else if (message instanceof S2CMicBundle)
+			{
+				int now = (int) System.currentTimeMillis();
+				S2CMicBundle bundle = (S2CMicBundle) message;
+				for (int i = 0; i < bundle.count; i++)
+				{
+					record(now - bundle.packets[i].timestamp);
+				}
+			}
+			else if (message instanceof S2CMicPacket)
+			{
+				record((int) System.currentTimeMillis() - ((S2CMicPacket) message).timestamp);
+			}
+		}
+
+		/**
+		 * Records the latency of one frame
+		 *
+		 * @param latency milliseconds between the frame being sent and received
+		 */
+		private synchronized void record(int latency)
+		{
+			if (latencyCount == latencies.length)
+			{
+				latencies = Arrays.copyOf(latencies, latencies.length * 2);
+			}
+			latencies[latencyCount++] = latency;
+		}
+
+		/**
+		 * Unused
+		 *
+		 * @param connection connection object from kryonet
+		 */
+		@Override
+		protected void onDisconnected(Connection connection)
+		{
+		}
+
+		/**
+		 * Disconnects from the server
+		 */
+		@Override
+		public void disconnect()
+		{
+			netClient.stop();
+		}
+	}
+}
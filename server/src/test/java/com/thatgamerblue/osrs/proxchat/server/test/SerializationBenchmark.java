@@ -0,0 +1,110 @@
+package com.thatgamerblue.osrs.proxchat.server.test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryonet.KryoSerialization;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.PcmCodec;
+import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.serializers.ByteArySerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures how well mic packet serialization scales across threads, comparing a single kryo instance shared behind a lock
+ * against a pool of kryo instances.
+ */
+public class SerializationBenchmark
+{
+	/**
+	 * Packets each thread serializes and deserializes per run
+	 */
+	private static final int PACKETS_PER_THREAD = 200_000;
+
+	/**
+	 * Main entrypoint of the benchmark
+	 *
+	 * @param args optionally the highest number of threads to test, defaults to the number of available processors
+	 * @throws InterruptedException if interrupted while waiting for the threads to finish
+	 */
+	public static void main(String[] args) throws InterruptedException
+	{
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+		// warm up the JIT before measuring anything
+		run(new KryoSerialization(register(new Kryo())), 1);
+		run(new KryoSerialization(SerializationBenchmark::register), 1);
+
+		System.out.println("threads\tshared (packets/s)\tpooled (packets/s)");
+		for (int threads = 1; threads <= maxThreads; threads *= 2)
+		{
+			long shared = run(new KryoSerialization(register(new Kryo())), threads);
+			long pooled = run(new KryoSerialization(SerializationBenchmark::register), threads);
+			System.out.println(threads + "\t" + shared + "\t" + pooled);
+		}
+	}
+
+	/**
+	 * Registers the types needed to serialize mic packets
+	 *
+	 * @param kryo kryo instance to register the types with
+	 * @return the kryo instance
+	 */
+	private static Kryo register(Kryo kryo)
+	{
+		kryo.register(byte[].class, new ByteArySerializer());
+		kryo.register(S2CMicPacket.class, new S2CMicPacket.Serializer());
+		return kryo;
+	}
+
+	/**
+	 * Serializes and deserializes mic packets on several threads at once
+	 *
+	 * @param serialization serialization to benchmark
+	 * @param threads       number of threads to run
+	 * @return throughput across all threads, in packets per second
+	 * @throws InterruptedException if interrupted while waiting for the threads to finish
+	 */
+	private static long run(KryoSerialization serialization, int threads) throws InterruptedException
+	{
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+
+		for (int i = 0; i < threads; i++)
+		{
+			new Thread(() ->
+			{
+				S2CMicPacket packet = new S2CMicPacket(1, PcmCodec.ID, 0, 0, new byte[AudioConstants.FRAME_SIZE], 0);
+				ByteBuffer buffer = ByteBuffer.allocate(NetworkHandler.BUFFER_SIZE);
+				try
+				{
+					start.await();
+					for (int j = 0; j < PACKETS_PER_THREAD; j++)
+					{
+						buffer.clear();
+						packet.distance = j;
+						serialization.write(null, buffer, packet);
+						buffer.flip();
+						serialization.read(null, buffer);
+					}
+				}
+				catch (InterruptedException | IOException ex)
+				{
+					ex.printStackTrace();
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}, "Benchmark " + i).start();
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - startTime;
+
+		return (long) threads * PACKETS_PER_THREAD * 1_000_000_000L / elapsed;
+	}
+}
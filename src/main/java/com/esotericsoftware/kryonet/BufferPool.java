@@ -0,0 +1,29 @@
+package com.esotericsoftware.kryonet;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Direct buffers of a single size, reused across connections. Direct buffers are slow to allocate and their memory is only
+ * freed once the GC collects them, so they are handed from closed connections to new ones instead.
+ * @see Server#setDirectBuffers(boolean) */
+class BufferPool {
+	private final int bufferSize;
+	private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	BufferPool (int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/** Returns a cleared buffer, allocating a new one if none are free. */
+	ByteBuffer acquire () {
+		ByteBuffer buffer = free.poll();
+		if (buffer == null) return ByteBuffer.allocateDirect(bufferSize);
+		buffer.clear();
+		return buffer;
+	}
+
+	/** Returns a buffer to the pool. The caller must not touch the buffer afterward. */
+	void release (ByteBuffer buffer) {
+		if (buffer != null) free.add(buffer);
+	}
+}
@@ -130,7 +130,8 @@ public class Client extends Connection implements EndPoint {
 		}
 		id = -1;
 		try {
-			if (udpPort != -1) udp = new UdpConnection(serialization, tcp.readBuffer.capacity());
+			udpRegistered = false;
+			udp = udpPort != -1 ? new UdpConnection(serialization, tcp.readBuffer.capacity()) : null;
 
 			long endTime;
 			synchronized (updateLock) {
@@ -167,6 +168,7 @@ public class Client extends Connection implements EndPoint {
 					while (!udpRegistered && System.currentTimeMillis() < endTime) {
 						RegisterUDP registerUDP = new RegisterUDP();
 						registerUDP.connectionID = id;
+						registerUDP.udpToken = udpToken;
 						udp.send(this, registerUDP, udpAddress);
 						try {
 							udpRegistrationLock.wait(100);
@@ -183,6 +185,56 @@ public class Client extends Connection implements EndPoint {
 		}
 	}
 
+	/** Registers UDP with the server after the client has already connected with TCP only. Unlike connecting with UDP up front,
+	 * failing to register UDP leaves the TCP connection open, so the client can carry on using TCP alone.
+	 * <p>
+	 * {@link #update(int)} must be called on a separate thread while registering.
+	 * @return true if UDP was registered, false if the server did not reply before the timeout.
+	 * @throws IllegalStateException if called from the connection's update thread, or if TCP is not connected.
+	 * @throws IOException if the UDP socket could not be opened. */
+	public boolean connectUDP (int udpPort, int timeout) throws IOException {
+		if (Thread.currentThread() == getUpdateThread())
+			throw new IllegalStateException("Cannot connect on the connection's update thread.");
+		if (!isConnected) throw new IllegalStateException("Must be connected via TCP to register UDP.");
+		if (udpRegistered) return true;
+
+		InetSocketAddress udpAddress = new InetSocketAddress(connectHost, udpPort);
+		UdpConnection udp = new UdpConnection(serialization, tcp.readBuffer.capacity());
+		long endTime;
+		synchronized (updateLock) {
+			selector.wakeup();
+			endTime = System.currentTimeMillis() + timeout;
+			udp.connect(selector, udpAddress);
+			this.udp = udp;
+		}
+
+		synchronized (udpRegistrationLock) {
+			while (!udpRegistered && isConnected && System.currentTimeMillis() < endTime) {
+				RegisterUDP registerUDP = new RegisterUDP();
+				registerUDP.connectionID = id;
+				registerUDP.udpToken = udpToken;
+				udp.send(this, registerUDP, udpAddress);
+				try {
+					udpRegistrationLock.wait(100);
+				} catch (InterruptedException ignored) {
+				}
+			}
+			if (!udpRegistered) {
+				if (DEBUG) debug("kryonet", "Timed out during UDP registration: " + connectHost + ":" + udpPort);
+				if (this.udp == udp) this.udp = null;
+				udp.close();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns true if UDP is registered with the server, and so {@link #sendUDP(Object)} can be used. */
+	@Override
+	public boolean isUdpRegistered () {
+		return isConnected && udpRegistered;
+	}
+
 	/** Calls {@link #connect(int, InetAddress, int) connect} with the values last passed to connect.
 	 * @throws IllegalStateException if connect has never been called. */
 	public void reconnect () throws IOException {
@@ -240,6 +292,7 @@ public class Client extends Connection implements EndPoint {
 									if (!tcpRegistered) {
 										if (object instanceof RegisterTCP) {
 											id = ((RegisterTCP)object).connectionID;
+											udpToken = ((RegisterTCP)object).udpToken;
 											synchronized (tcpRegistrationLock) {
 												tcpRegistered = true;
 												tcpRegistrationLock.notifyAll();
@@ -250,20 +303,22 @@ public class Client extends Connection implements EndPoint {
 										}
 										continue;
 									}
-									if (udp != null && !udpRegistered) {
-										if (object instanceof RegisterUDP) {
-											synchronized (udpRegistrationLock) {
-												udpRegistered = true;
-												udpRegistrationLock.notifyAll();
-												if (TRACE) trace("kryonet", this + " received UDP: RegisterUDP");
-												if (DEBUG) {
-													debug("kryonet", "Port " + udp.datagramChannel.socket().getLocalPort()
-														+ "/UDP connected to: " + udp.connectedAddress);
-												}
-												setConnected(true);
+									if (object instanceof RegisterUDP) {
+										UdpConnection udp = this.udp;
+										if (udp == null || udpRegistered) continue;
+										boolean wasConnected = isConnected;
+										synchronized (udpRegistrationLock) {
+											udpRegistered = true;
+											udpRegistrationLock.notifyAll();
+											if (TRACE) trace("kryonet", this + " received UDP: RegisterUDP");
+											if (DEBUG) {
+												debug("kryonet", "Port " + udp.datagramChannel.socket().getLocalPort()
+													+ "/UDP connected to: " + udp.connectedAddress);
 											}
-											notifyConnected();
+											setConnected(true);
 										}
+										// Registering UDP after connecting with TCP only doesn't connect again.
+										if (!wasConnected) notifyConnected();
 										continue;
 									}
 									if (!isConnected) continue;
@@ -279,7 +334,16 @@ public class Client extends Connection implements EndPoint {
 									notifyReceived(object);
 								}
 							} else {
-								if (udp.readFromAddress() == null) continue;
+								UdpConnection udp = this.udp;
+								if (udp == null) continue;
+								try {
+									if (udp.readFromAddress() == null) continue;
+								} catch (IOException ex) {
+									// Failing to register UDP after connecting with TCP must not take the TCP connection down with it.
+									if (!isConnected || udpRegistered) throw ex;
+									if (DEBUG) debug("kryonet", "Unable to read UDP during registration: " + ex.getMessage());
+									continue;
+								}
 								Object object = udp.readObject(this);
 								if (object == null) continue;
 								keepAlive();
@@ -313,6 +377,7 @@ public class Client extends Connection implements EndPoint {
 		if (!isConnected) return;
 		long time = System.currentTimeMillis();
 		if (tcp.needsKeepAlive(time)) sendTCP(FrameworkMessage.keepAlive);
+		UdpConnection udp = this.udp;
 		if (udp != null && udpRegistered && udp.needsKeepAlive(time)) sendUDP(FrameworkMessage.keepAlive);
 	}
 
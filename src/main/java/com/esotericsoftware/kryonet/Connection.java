@@ -6,6 +6,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -23,8 +24,9 @@ public class Connection {
 	private String name;
 	EndPoint endPoint;
 	TcpConnection tcp;
-	UdpConnection udp;
-	InetSocketAddress udpRemoteAddress;
+	volatile UdpConnection udp;
+	volatile InetSocketAddress udpRemoteAddress;
+	long udpToken;
 	private Listener[] listeners = {};
 	private Object listenerLock = new Object();
 	private int lastPingID;
@@ -39,6 +41,11 @@ public class Connection {
 		tcp = new TcpConnection(serialization, writeBufferSize, objectBufferSize);
 	}
 
+	void initialize (Serialization serialization, int writeBufferSize, int objectBufferSize, BufferPool writePool,
+		BufferPool readPool) {
+		tcp = new TcpConnection(serialization, writeBufferSize, objectBufferSize, writePool, readPool);
+	}
+
 	/** Returns the server assigned ID. Will return -1 if this connection has never been connected or the last assigned ID if this
 	 * connection has been disconnected. */
 	public int getID () {
@@ -79,6 +86,28 @@ public class Connection {
 		}
 	}
 
+	/** Sends a frame produced by {@link Server#frameTCP(ByteBuffer, Object)} over the network using TCP. If droppable is true, the
+	 * frame may be dropped rather than queued if the TCP socket is not keeping up, eg for audio that would be stale by the time
+	 * it arrives. Droppable frames can be delivered after frames sent later that are not droppable.
+	 * @return The number of bytes sent.
+	 * @see #getDroppedTcpFrames() */
+	public int sendFramedTCP (ByteBuffer frame, boolean droppable) {
+		if (frame == null) throw new IllegalArgumentException("frame cannot be null.");
+		try {
+			int length = tcp.sendFramed(this, frame, droppable);
+			if (TRACE) trace("kryonet", this + " sent TCP frame (" + length + ")");
+			return length;
+		} catch (IOException ex) {
+			if (DEBUG) debug("kryonet", "Unable to send TCP with connection: " + this, ex);
+			close();
+			return 0;
+		} catch (KryoNetException ex) {
+			if (ERROR) error("kryonet", "Unable to send TCP with connection: " + this, ex);
+			close();
+			return 0;
+		}
+	}
+
 	/** Sends the object over the network using UDP.
 	 * @return The number of bytes sent.
 	 * @see Kryo#register(Class, com.esotericsoftware.kryo.Serializer)
@@ -118,6 +147,48 @@ public class Connection {
 		}
 	}
 
+	/** Sends a frame previously produced by {@link Server#frameTCP(ByteBuffer, Object)} using UDP. The TCP length prefix is
+	 * skipped, as each datagram holds exactly one object. The frame's position is left unchanged so it can be sent to other
+	 * connections.
+	 * @return The number of bytes sent.
+	 * @throws IllegalStateException if this connection was not opened with both TCP and UDP. */
+	public int sendFramedUDP (ByteBuffer frame) {
+		if (frame == null) throw new IllegalArgumentException("frame cannot be null.");
+		SocketAddress address = udpRemoteAddress;
+		UdpConnection udp = this.udp;
+		if (address == null && udp != null) address = udp.connectedAddress;
+		if (address == null && isConnected) throw new IllegalStateException("Connection is not connected via UDP.");
+
+		try {
+			if (address == null) throw new SocketException("Connection is closed.");
+
+			int length = udp.sendFramed(frame, tcp.serialization.getLengthLength(), address);
+			if (TRACE) trace("kryonet", this + " sent UDP frame (" + length + ")");
+			return length;
+		} catch (IOException ex) {
+			if (DEBUG) debug("kryonet", "Unable to send UDP with connection: " + this, ex);
+			close();
+			return 0;
+		}
+	}
+
+	/** Asks for {@link #onFlush()} to be called on the next flush pass of the reactor that owns this connection, so data batched
+	 * until then goes out along with everything else queued for the connection. If the connection is not corked, {@link #onFlush()}
+	 * is called right away. This method is thread safe.
+	 * @see Server#setCorked(boolean) */
+	public void requestFlush () {
+		Server.Reactor reactor = tcp.reactor;
+		if (reactor != null)
+			reactor.queueFlushRequest(this);
+		else
+			onFlush();
+	}
+
+	/** Called after {@link #requestFlush()}, by the reactor that owns this connection before it writes the connection's queued TCP
+	 * bytes. The connection may have been closed since the request. Does nothing by default. */
+	protected void onFlush () {
+	}
+
 	public void close () {
 		boolean wasConnected = isConnected;
 		isConnected = false;
@@ -270,6 +341,13 @@ public class Connection {
 		return udpRemoteAddress;
 	}
 
+	/** Returns true if UDP has been registered for this connection, and so objects can be sent to it using UDP. */
+	public boolean isUdpRegistered () {
+		if (udpRemoteAddress != null) return true;
+		UdpConnection udp = this.udp;
+		return udp != null && udp.connectedAddress != null;
+	}
+
 	/** Workaround for broken NIO networking on Android 1.6. If true, the underlying NIO buffer is always copied to the beginning of
 	 * the buffer before being given to the SocketChannel for sending. The Harmony SocketChannel implementation in Android 1.6
 	 * ignores the buffer position, always copying from the beginning of the buffer. This is fixed in Android 2.0+. */
@@ -286,12 +364,22 @@ public class Connection {
 
 	/** Returns the number of bytes that are waiting to be written to the TCP socket, if any. */
 	public int getTcpWriteBufferSize () {
-		return tcp.writeBuffer.position();
+		ByteBuffer writeBuffer = tcp.writeBuffer;
+		if (writeBuffer == null) return 0; // Closed and released to a pool.
+		return writeBuffer.position();
+	}
+
+	/** Returns the number of droppable frames that were dropped because the TCP socket was not keeping up.
+	 * @see #sendFramedTCP(ByteBuffer, boolean) */
+	public int getDroppedTcpFrames () {
+		return tcp.droppedFrames;
 	}
 
 	/** @see #setIdleThreshold(float) */
 	public boolean isIdle () {
-		return tcp.writeBuffer.position() / (float)tcp.writeBuffer.capacity() < tcp.idleThreshold;
+		ByteBuffer writeBuffer = tcp.writeBuffer;
+		if (writeBuffer == null) return true;
+		return writeBuffer.position() / (float)writeBuffer.capacity() < tcp.idleThreshold;
 	}
 
 	/** If the percent of the TCP write buffer that is filled is less than the specified threshold,
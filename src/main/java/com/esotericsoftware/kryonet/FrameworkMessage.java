@@ -12,9 +12,11 @@ import com.esotericsoftware.minlog.Log;
 public interface FrameworkMessage {
 	static final FrameworkMessage.KeepAlive keepAlive = new KeepAlive();
 
-	/** Internal message to give the client the server assigned connection ID. */
+	/** Internal message to give the client the server assigned connection ID, and the token it must prove it owns the connection
+	 * with when registering UDP. */
 	static public class RegisterTCP implements FrameworkMessage {
 		public int connectionID;
+		public long udpToken;
 
 		public static class Serializer extends com.esotericsoftware.kryo.Serializer<RegisterTCP>
 		{
@@ -22,6 +24,7 @@ public interface FrameworkMessage {
 			public void write(Kryo kryo, Output output, RegisterTCP packet)
 			{
 				output.writeInt(packet.connectionID);
+				output.writeLong(packet.udpToken);
 			}
 
 			@Override
@@ -29,14 +32,17 @@ public interface FrameworkMessage {
 			{
 				RegisterTCP packet = new RegisterTCP();
 				packet.connectionID = input.readInt();
+				packet.udpToken = input.readLong();
 				return packet;
 			}
 		}
 	}
 
-	/** Internal message to give the server the client's UDP port. */
+	/** Internal message to give the server the client's UDP port. The token must match the one sent in {@link RegisterTCP}, so
+	 * other hosts can't claim a connection's UDP traffic by guessing its ID. */
 	static public class RegisterUDP implements FrameworkMessage {
 		public int connectionID;
+		public long udpToken;
 
 		public static class Serializer extends com.esotericsoftware.kryo.Serializer<RegisterUDP>
 		{
@@ -44,6 +50,7 @@ public interface FrameworkMessage {
 			public void write(Kryo kryo, Output output, RegisterUDP packet)
 			{
 				output.writeInt(packet.connectionID);
+				output.writeLong(packet.udpToken);
 			}
 
 			@Override
@@ -51,6 +58,7 @@ public interface FrameworkMessage {
 			{
 				RegisterUDP packet = new RegisterUDP();
 				packet.connectionID = input.readInt();
+				packet.udpToken = input.readLong();
 				return packet;
 			}
 		}
@@ -1,8 +1,9 @@
-
 package com.esotericsoftware.kryonet;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.ByteBufferInputStream;
@@ -15,45 +16,81 @@ import com.esotericsoftware.kryonet.FrameworkMessage.Ping;
 import com.esotericsoftware.kryonet.FrameworkMessage.RegisterTCP;
 import com.esotericsoftware.kryonet.FrameworkMessage.RegisterUDP;
 
+/** Serializes objects using Kryo. Kryo instances are not thread safe, so this either shares a single instance behind a lock, or
+ * lends each read and write an instance from a pool.
+ * <p>
+ * Sharing one instance means every send and receive on the endpoint, from any thread, waits for every other. Pooled instances
+ * let them run concurrently, but require every instance to be registered identically, which is why that mode is configured
+ * with a registrar rather than a Kryo instance. Instances are pooled rather than kept per thread, so an endpoint with a thread
+ * per connection, eg virtual threads, only has as many instances as reads and writes run at once, rather than one per
+ * connection. */
 public class KryoSerialization implements Serialization {
-	private final Kryo kryo;
-	private final Input input;
-	private final Output output;
-	private final ByteBufferInputStream byteBufferInputStream = new ByteBufferInputStream();
-	private final ByteBufferOutputStream byteBufferOutputStream = new ByteBufferOutputStream();
+	/** Most idle instances kept in the pool, more than that are dropped once used. */
+	static private final int POOL_SIZE = 64;
+
+	private final KryoState shared;
+	private final Consumer<Kryo> registrar;
+	private final ArrayBlockingQueue<KryoState> pool;
 
 	public KryoSerialization () {
 		this(new Kryo());
 	}
 
+	/** Shares the specified Kryo instance between all threads, serializing every read and write behind a single lock. */
 	public KryoSerialization (Kryo kryo) {
-		this.kryo = kryo;
-
-		kryo.register(RegisterTCP.class, new RegisterTCP.Serializer());
-		kryo.register(RegisterUDP.class, new RegisterUDP.Serializer());
-		kryo.register(KeepAlive.class, new KeepAlive.Serializer());
-		kryo.register(DiscoverHost.class, new DiscoverHost.Serializer());
-		kryo.register(Ping.class, new Ping.Serializer());
+		shared = new KryoState(kryo);
+		registrar = null;
+		pool = null;
+	}
 
-		input = new Input(byteBufferInputStream, 512);
-		output = new Output(byteBufferOutputStream, 512);
+	/** Lends each read and write a Kryo instance from a pool, so reads and writes from different threads don't contend. An
+	 * instance is created whenever the pool is empty, has the framework messages registered, and is then passed to the
+	 * registrar. An instance is only used by one thread at a time, but not always the same thread.
+	 * @param registrar Registers the application's classes. Must register the same classes, in the same order, every time it is
+	 *           called. Serializers may be shared between instances, in which case they must be thread safe. */
+	public KryoSerialization (Consumer<Kryo> registrar) {
+		if (registrar == null) throw new IllegalArgumentException("registrar cannot be null.");
+		shared = null;
+		this.registrar = registrar;
+		pool = new ArrayBlockingQueue<KryoState>(POOL_SIZE);
 	}
 
+	/** Returns the shared Kryo instance.
+	 * @throws IllegalStateException if the instances are pooled, in which case classes must be registered by the registrar. */
 	public Kryo getKryo () {
-		return kryo;
+		if (shared == null) throw new IllegalStateException("Kryo instances are pooled, register classes with the registrar.");
+		return shared.kryo;
 	}
 
-	public synchronized void write (Connection connection, ByteBuffer buffer, Object object) throws IOException
-	{
-		byteBufferOutputStream.setByteBuffer(buffer);
-		kryo.writeClassAndObject(output, object);
-		output.flush();
+	public void write (Connection connection, ByteBuffer buffer, Object object) throws IOException {
+		KryoState shared = this.shared;
+		if (shared != null) {
+			synchronized (shared) {
+				shared.write(buffer, object);
+			}
+			return;
+		}
+		KryoState state = acquire();
+		try {
+			state.write(buffer, object);
+		} finally {
+			pool.offer(state);
+		}
 	}
 
-	public synchronized Object read (Connection connection, ByteBuffer buffer) {
-		byteBufferInputStream.setByteBuffer(buffer);
-		input.setInputStream(byteBufferInputStream);
-		return kryo.readClassAndObject(input);
+	public Object read (Connection connection, ByteBuffer buffer) {
+		KryoState shared = this.shared;
+		if (shared != null) {
+			synchronized (shared) {
+				return shared.read(buffer);
+			}
+		}
+		KryoState state = acquire();
+		try {
+			return state.read(buffer);
+		} finally {
+			pool.offer(state);
+		}
 	}
 
 	public void writeLength (ByteBuffer buffer, int length) {
@@ -67,4 +104,47 @@ public class KryoSerialization implements Serialization {
 	public int getLengthLength () {
 		return 4;
 	}
+
+	private KryoState acquire () {
+		KryoState state = pool.poll();
+		if (state == null) {
+			state = new KryoState(new Kryo());
+			registrar.accept(state.kryo);
+		}
+		return state;
+	}
+
+	/** A Kryo instance and the buffers it reads from and writes to. Not thread safe. */
+	static private class KryoState {
+		final Kryo kryo;
+		final Input input;
+		final Output output;
+		final ByteBufferInputStream byteBufferInputStream = new ByteBufferInputStream();
+		final ByteBufferOutputStream byteBufferOutputStream = new ByteBufferOutputStream();
+
+		KryoState (Kryo kryo) {
+			this.kryo = kryo;
+
+			kryo.register(RegisterTCP.class, new RegisterTCP.Serializer());
+			kryo.register(RegisterUDP.class, new RegisterUDP.Serializer());
+			kryo.register(KeepAlive.class, new KeepAlive.Serializer());
+			kryo.register(DiscoverHost.class, new DiscoverHost.Serializer());
+			kryo.register(Ping.class, new Ping.Serializer());
+
+			input = new Input(byteBufferInputStream, 512);
+			output = new Output(byteBufferOutputStream, 512);
+		}
+
+		void write (ByteBuffer buffer, Object object) {
+			byteBufferOutputStream.setByteBuffer(buffer);
+			kryo.writeClassAndObject(output, object);
+			output.flush();
+		}
+
+		Object read (ByteBuffer buffer) {
+			byteBufferInputStream.setByteBuffer(buffer);
+			input.setInputStream(byteBufferInputStream);
+			return kryo.readClassAndObject(input);
+		}
+	}
 }
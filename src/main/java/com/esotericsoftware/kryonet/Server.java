@@ -9,10 +9,15 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.util.IntMap;
@@ -23,23 +28,37 @@ import com.esotericsoftware.kryonet.FrameworkMessage.RegisterUDP;
 import static com.esotericsoftware.minlog.Log.*;
 
 /** Manages TCP and optionally UDP connections from many {@link Client Clients}.
+ * <p>
+ * The server can spread its TCP connections over several reactors, each with its own selector and thread, so reading,
+ * deserializing and handling messages scales across cores. The server thread is the first reactor and also accepts new
+ * connections and handles all UDP traffic. Listener callbacks for a connection's TCP messages always happen on the thread of the
+ * reactor that owns it, so listeners must be thread safe when more than one reactor is used.
+ * <p>
+ * When bound with a UDP port, UDP is optional for clients. Connections are connected as soon as TCP is registered and can
+ * register UDP later, or never, in which case only TCP can be used to talk to them.
  * @author Nathan Sweet <misc@n4te.com> */
 public class Server implements EndPoint {
 	private final Serialization serialization;
 	private final int writeBufferSize, objectBufferSize;
 	private final Selector selector;
-	private int emptySelects;
+	private final Reactor[] reactors;
+	private int nextReactor;
 	private ServerSocketChannel serverChannel;
-	private UdpConnection udp;
-	private Connection[] connections = {};
+	private volatile UdpConnection udp;
+	private volatile Connection[] connections = {};
 	private IntMap<Connection> pendingConnections = new IntMap();
-	Listener[] listeners = {};
+	private final ConcurrentHashMap<InetSocketAddress, Connection> udpConnections = new ConcurrentHashMap<InetSocketAddress, Connection>();
+	private final SecureRandom random = new SecureRandom();
+	private final Object connectionLock = new Object();
+	volatile Listener[] listeners = {};
 	private Object listenerLock = new Object();
-	private int nextConnectionID = 1;
+	private final AtomicInteger nextConnectionID = new AtomicInteger(1);
 	private volatile boolean shutdown;
 	private Object updateLock = new Object();
 	private Thread updateThread;
 	private ByteBuffer emptyBuffer = ByteBuffer.allocate(0);
+	private BufferPool writePool, readPool;
+	private boolean corked;
 
 	private Listener dispatchListener = new Listener() {
 		public void connected (Connection connection) {
@@ -92,6 +111,12 @@ public class Server implements EndPoint {
 	}
 
 	public Server (int writeBufferSize, int objectBufferSize, Serialization serialization) {
+		this(writeBufferSize, objectBufferSize, serialization, 1);
+	}
+
+	/** @param reactorCount The number of selector threads to spread TCP connections over, including the server thread. */
+	public Server (int writeBufferSize, int objectBufferSize, Serialization serialization, int reactorCount) {
+		if (reactorCount < 1) throw new IllegalArgumentException("reactorCount must be at least 1: " + reactorCount);
 		this.writeBufferSize = writeBufferSize;
 		this.objectBufferSize = objectBufferSize;
 
@@ -99,11 +124,31 @@ public class Server implements EndPoint {
 
 		try {
 			selector = Selector.open();
+			reactors = new Reactor[reactorCount];
+			reactors[0] = new Reactor(selector);
+			for (int i = 1; i < reactorCount; i++)
+				reactors[i] = new Reactor(Selector.open());
 		} catch (IOException ex) {
 			throw new RuntimeException("Error opening selector.", ex);
 		}
 	}
 
+	/** If true, each connection's TCP buffers and the UDP read buffer are direct buffers, so reads and writes don't go through the
+	 * JDK's temporary direct buffer and copy. The TCP buffers are pooled and reused once a connection is closed, as direct buffers
+	 * are slow to allocate. Must be called before {@link #bind(InetSocketAddress, InetSocketAddress)}. Defaults to false. */
+	public void setDirectBuffers (boolean directBuffers) {
+		writePool = directBuffers ? new BufferPool(writeBufferSize) : null;
+		readPool = directBuffers ? new BufferPool(objectBufferSize) : null;
+	}
+
+	/** If true, TCP sends only queue bytes in the connection's write buffer. Each reactor then writes every connection with queued
+	 * bytes once per iteration, just before it selects, so many objects sent to a connection during an iteration cost a single
+	 * write. Sends from threads other than the reactor's wake it up, at most once per iteration. Only applies to connections
+	 * accepted afterward. Defaults to false. */
+	public void setCorked (boolean corked) {
+		this.corked = corked;
+	}
+
 	public Serialization getSerialization () {
 		return serialization;
 	}
@@ -137,7 +182,7 @@ public class Server implements EndPoint {
 				if (DEBUG) debug("kryonet", "Accepting connections on port: " + tcpPort + "/TCP");
 
 				if (udpPort != null) {
-					udp = new UdpConnection(serialization, objectBufferSize);
+					udp = new UdpConnection(serialization, objectBufferSize, readPool != null);
 					udp.bind(selector, udpPort);
 					if (DEBUG) debug("kryonet", "Accepting connections on port: " + udpPort + "/UDP");
 				}
@@ -149,13 +194,17 @@ public class Server implements EndPoint {
 		if (INFO) info("kryonet", "Server opened.");
 	}
 
-	/** Accepts any new connections and reads or writes any pending data for the current connections.
+	/** Accepts any new connections and reads or writes any pending data for the connections owned by the server thread's reactor.
 	 * @param timeout Wait for up to the specified milliseconds for a connection to be ready to process. May be zero to return
 	 *           immediately if there are no connections to process. */
 	public void update (int timeout) throws IOException {
 		updateThread = Thread.currentThread();
 		synchronized (updateLock) { // Blocks to avoid a select while the selector is used to bind the server connection.
 		}
+		Reactor reactor = reactors[0];
+		reactor.thread = updateThread;
+		reactor.releaseClosed();
+		reactor.flush();
 		long startTime = System.currentTimeMillis();
 		int select = 0;
 		if (timeout > 0) {
@@ -164,18 +213,9 @@ public class Server implements EndPoint {
 			select = selector.selectNow();
 		}
 		if (select == 0) {
-			emptySelects++;
-			if (emptySelects == 100) {
-				emptySelects = 0;
-				// NIO freaks and returns immediately with 0 sometimes, so try to keep from hogging the CPU.
-				long elapsedTime = System.currentTimeMillis() - startTime;
-				try {
-					if (elapsedTime < 25) Thread.sleep(25 - elapsedTime);
-				} catch (InterruptedException ex) {
-				}
-			}
+			reactor.emptySelect(startTime);
 		} else {
-			emptySelects = 0;
+			reactor.emptySelects = 0;
 			Set<SelectionKey> keys = selector.selectedKeys();
 			synchronized (keys) {
 				UdpConnection udp = this.udp;
@@ -188,49 +228,7 @@ public class Server implements EndPoint {
 						int ops = selectionKey.readyOps();
 
 						if (fromConnection != null) { // Must be a TCP read or write operation.
-							if (udp != null && fromConnection.udpRemoteAddress == null) {
-								fromConnection.close();
-								continue;
-							}
-							if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ) {
-								try {
-									while (true) {
-										Object object = fromConnection.tcp.readObject(fromConnection);
-										if (object == null) break;
-										if (DEBUG) {
-											String objectString = object == null ? "null" : object.getClass().getSimpleName();
-											if (!(object instanceof FrameworkMessage)) {
-												debug("kryonet", fromConnection + " received TCP: " + objectString);
-											} else if (TRACE) {
-												trace("kryonet", fromConnection + " received TCP: " + objectString);
-											}
-										}
-										fromConnection.notifyReceived(object);
-									}
-								} catch (IOException ex) {
-									if (TRACE) {
-										trace("kryonet", "Unable to read TCP from: " + fromConnection, ex);
-									} else if (DEBUG) {
-										debug("kryonet", fromConnection + " update: " + ex.getMessage());
-									}
-									fromConnection.close();
-								} catch (KryoNetException ex) {
-									if (ERROR) error("kryonet", "Error reading TCP from connection: " + fromConnection, ex);
-									fromConnection.close();
-								}
-							}
-							if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) {
-								try {
-									fromConnection.tcp.writeOperation();
-								} catch (IOException ex) {
-									if (TRACE) {
-										trace("kryonet", "Unable to write TCP to connection: " + fromConnection, ex);
-									} else if (DEBUG) {
-										debug("kryonet", fromConnection + " update: " + ex.getMessage());
-									}
-									fromConnection.close();
-								}
-							}
+							tcpOperation(fromConnection, ops);
 							continue;
 						}
 
@@ -239,7 +237,14 @@ public class Server implements EndPoint {
 							if (serverChannel == null) continue;
 							try {
 								SocketChannel socketChannel = serverChannel.accept();
-								if (socketChannel != null) acceptOperation(socketChannel);
+								if (socketChannel != null) {
+									Reactor target = reactors[nextReactor];
+									nextReactor = (nextReactor + 1) % reactors.length;
+									if (target == reactor)
+										acceptOperation(reactor, socketChannel);
+									else
+										target.queueAccept(socketChannel);
+								}
 							} catch (IOException ex) {
 								if (DEBUG) debug("kryonet", "Unable to accept new connection.", ex);
 							}
@@ -260,14 +265,7 @@ public class Server implements EndPoint {
 						}
 						if (fromAddress == null) continue;
 
-						Connection[] connections = this.connections;
-						for (int i = 0, n = connections.length; i < n; i++) {
-							Connection connection = connections[i];
-							if (fromAddress.equals(connection.udpRemoteAddress)) {
-								fromConnection = connection;
-								break;
-							}
-						}
+						fromConnection = udpConnections.get(fromAddress);
 
 						Object object;
 						try {
@@ -285,17 +283,24 @@ public class Server implements EndPoint {
 						if (object instanceof FrameworkMessage) {
 							if (object instanceof RegisterUDP) {
 								// Store the fromAddress on the connection and reply over TCP with a RegisterUDP to indicate success.
-								int fromConnectionID = ((RegisterUDP)object).connectionID;
-								Connection connection = pendingConnections.remove(fromConnectionID);
+								RegisterUDP registerUDP = (RegisterUDP)object;
+								int fromConnectionID = registerUDP.connectionID;
+								Connection connection;
+								synchronized (connectionLock) {
+									connection = pendingConnections.get(fromConnectionID);
+									if (connection != null && connection.udpToken == registerUDP.udpToken)
+										pendingConnections.remove(fromConnectionID);
+									else
+										connection = null;
+								}
 								if (connection != null) {
 									if (connection.udpRemoteAddress != null) continue outer;
+									if (udpConnections.putIfAbsent(fromAddress, connection) != null) continue outer;
 									connection.udpRemoteAddress = fromAddress;
-									addConnection(connection);
 									connection.sendTCP(new RegisterUDP());
 									if (DEBUG)
 										debug("kryonet", "Port " + udp.datagramChannel.socket().getLocalPort() + "/UDP connected to: "
 											+ fromAddress);
-									connection.notifyConnected();
 									continue;
 								}
 								if (DEBUG)
@@ -334,17 +339,50 @@ public class Server implements EndPoint {
 				}
 			}
 		}
-		long time = System.currentTimeMillis();
-		Connection[] connections = this.connections;
-		for (int i = 0, n = connections.length; i < n; i++) {
-			Connection connection = connections[i];
-			if (connection.tcp.isTimedOut(time)) {
-				if (DEBUG) debug("kryonet", connection + " timed out.");
-				connection.close();
-			} else {
-				if (connection.tcp.needsKeepAlive(time)) connection.sendTCP(FrameworkMessage.keepAlive);
+		reactor.keepAlive();
+	}
+
+	/** Reads or writes any pending data for a TCP connection. Must only be called by the thread of the reactor that owns the
+	 * connection. */
+	private void tcpOperation (Connection fromConnection, int ops) {
+		if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ) {
+			try {
+				while (true) {
+					Object object = fromConnection.tcp.readObject(fromConnection);
+					if (object == null) break;
+					if (DEBUG) {
+						String objectString = object == null ? "null" : object.getClass().getSimpleName();
+						if (!(object instanceof FrameworkMessage)) {
+							debug("kryonet", fromConnection + " received TCP: " + objectString);
+						} else if (TRACE) {
+							trace("kryonet", fromConnection + " received TCP: " + objectString);
+						}
+					}
+					fromConnection.notifyReceived(object);
+				}
+			} catch (IOException ex) {
+				if (TRACE) {
+					trace("kryonet", "Unable to read TCP from: " + fromConnection, ex);
+				} else if (DEBUG) {
+					debug("kryonet", fromConnection + " update: " + ex.getMessage());
+				}
+				fromConnection.close();
+			} catch (KryoNetException ex) {
+				if (ERROR) error("kryonet", "Error reading TCP from connection: " + fromConnection, ex);
+				fromConnection.close();
+			}
+		}
+		if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) {
+			try {
+				fromConnection.tcp.writeOperation();
+			} catch (IOException ex) {
+				if (TRACE) {
+					trace("kryonet", "Unable to write TCP to connection: " + fromConnection, ex);
+				} else if (DEBUG) {
+					debug("kryonet", fromConnection + " update: " + ex.getMessage());
+				}
+				fromConnection.close();
 			}
-			if (connection.isIdle()) connection.notifyIdle();
 		}
 	}
 
@@ -363,7 +401,10 @@ public class Server implements EndPoint {
 	}
 
 	public void start () {
+		shutdown = false;
 		new Thread(this, "Server").start();
+		for (int i = 1; i < reactors.length; i++)
+			reactors[i].start("Server Reactor " + i);
 	}
 
 	public void stop () {
@@ -371,34 +412,47 @@ public class Server implements EndPoint {
 		close();
 		if (TRACE) trace("kryonet", "Server thread stopping.");
 		shutdown = true;
+		for (int i = 1; i < reactors.length; i++)
+			reactors[i].selector.wakeup();
 	}
 
-	private void acceptOperation (SocketChannel socketChannel) {
+	/** Sets up a newly accepted socket as a connection owned by the specified reactor. Must only be called by the reactor's
+	 * thread. */
+	private void acceptOperation (Reactor reactor, SocketChannel socketChannel) {
 		Connection connection = newConnection();
-		connection.initialize(serialization, writeBufferSize, objectBufferSize);
+		connection.initialize(serialization, writeBufferSize, objectBufferSize, writePool, readPool);
 		connection.endPoint = this;
+		if (corked) connection.tcp.reactor = reactor;
 		UdpConnection udp = this.udp;
 		if (udp != null) connection.udp = udp;
 		try {
-			SelectionKey selectionKey = connection.tcp.accept(selector, socketChannel);
+			SelectionKey selectionKey = connection.tcp.accept(reactor.selector, socketChannel);
 			selectionKey.attach(connection);
 
-			int id = nextConnectionID++;
-			if (nextConnectionID == -1) nextConnectionID = 1;
+			int id = nextConnectionID.getAndIncrement();
+			while (id <= 0) {
+				nextConnectionID.compareAndSet(id + 1, 1);
+				id = nextConnectionID.getAndIncrement();
+			}
 			connection.id = id;
 			connection.setConnected(true);
 			connection.addListener(dispatchListener);
+			reactor.addConnection(connection);
+			addConnection(connection);
 
-			if (udp == null)
-				addConnection(connection);
-			else
-				pendingConnections.put(id, connection);
+			if (udp != null) {
+				connection.udpToken = random.nextLong();
+				synchronized (connectionLock) {
+					pendingConnections.put(id, connection);
+				}
+			}
 
 			RegisterTCP registerConnection = new RegisterTCP();
 			registerConnection.connectionID = id;
+			registerConnection.udpToken = connection.udpToken;
 			connection.sendTCP(registerConnection);
 
-			if (udp == null) connection.notifyConnected();
+			connection.notifyConnected();
 		} catch (IOException ex) {
 			connection.close();
 			if (DEBUG) debug("kryonet", "Unable to accept TCP connection.", ex);
@@ -412,21 +466,60 @@ public class Server implements EndPoint {
 	}
 
 	private void addConnection (Connection connection) {
+		synchronized (connectionLock) {
+			connections = add(connections, connection);
+		}
+	}
+
+	void removeConnection (Connection connection) {
+		synchronized (connectionLock) {
+			connections = remove(connections, connection);
+			pendingConnections.remove(connection.id);
+		}
+		InetSocketAddress udpRemoteAddress = connection.udpRemoteAddress;
+		if (udpRemoteAddress != null) udpConnections.remove(udpRemoteAddress, connection);
+		for (int i = 0, n = reactors.length; i < n; i++)
+			reactors[i].removeConnection(connection);
+	}
+
+	static private Connection[] add (Connection[] connections, Connection connection) {
 		Connection[] newConnections = new Connection[connections.length + 1];
 		newConnections[0] = connection;
 		System.arraycopy(connections, 0, newConnections, 1, connections.length);
-		connections = newConnections;
+		return newConnections;
 	}
 
-	void removeConnection (Connection connection) {
+	static private Connection[] remove (Connection[] connections, Connection connection) {
 		ArrayList<Connection> temp = new ArrayList(Arrays.asList(connections));
-		temp.remove(connection);
-		connections = temp.toArray(new Connection[temp.size()]);
-
-		pendingConnections.remove(connection.id);
+		if (!temp.remove(connection)) return connections;
+		return temp.toArray(new Connection[temp.size()]);
 	}
 
-	// BOZO - Provide mechanism for sending to multiple clients without serializing multiple times.
+	/** Serializes an object into a complete TCP frame, including the length prefix, so it can be sent to multiple clients with
+	 * {@link Connection#sendFramedTCP(ByteBuffer, boolean)} or {@link Connection#sendFramedUDP(ByteBuffer)} without serializing
+	 * it again for each one. The frame is written starting at the buffer's position, after which the buffer is flipped so it holds exactly the
+	 * frame. The frame can be modified in place between sends, as long as its length does not change.
+	 * @return The length of the frame. */
+	public int frameTCP (ByteBuffer buffer, Object object) throws IOException {
+		if (object == null) throw new IllegalArgumentException("object cannot be null.");
+		int start = buffer.position();
+		int lengthLength = serialization.getLengthLength();
+		buffer.position(start + lengthLength);
+
+		try {
+			serialization.write(null, buffer, object);
+		} catch (KryoNetException ex) {
+			throw new KryoNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+		}
+		int end = buffer.position();
+
+		buffer.position(start);
+		serialization.writeLength(buffer, end - lengthLength - start);
+		buffer.position(end);
+		buffer.flip();
+		buffer.position(start);
+		return end - start;
+	}
 
 	public void sendToAllTCP (Object object) {
 		Connection[] connections = this.connections;
@@ -493,7 +586,17 @@ public class Server implements EndPoint {
 		if (INFO && connections.length > 0) info("kryonet", "Closing server connections...");
 		for (int i = 0, n = connections.length; i < n; i++)
 			connections[i].close();
-		connections = new Connection[0];
+		// Sockets accepted but not yet picked up by their reactor.
+		for (int i = 0, n = reactors.length; i < n; i++) {
+			Reactor reactor = reactors[i];
+			SocketChannel socketChannel;
+			while ((socketChannel = reactor.pendingAccepts.poll()) != null) {
+				try {
+					socketChannel.close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
 
 		ServerSocketChannel serverChannel = this.serverChannel;
 		if (serverChannel != null) {
@@ -520,6 +623,9 @@ public class Server implements EndPoint {
 			} catch (IOException ignored) {
 			}
 		}
+		// Other reactors complete closing their sockets on their next select.
+		for (int i = 1, n = reactors.length; i < n; i++)
+			reactors[i].selector.wakeup();
 	}
 
 	public Thread getUpdateThread () {
@@ -530,4 +636,178 @@ public class Server implements EndPoint {
 	public Connection[] getConnections () {
 		return connections;
 	}
+
+	/** Returns the number of selector threads TCP connections are spread over, including the server thread. */
+	public int getReactorCount () {
+		return reactors.length;
+	}
+
+	/** A selector and the TCP connections registered with it. Every reactor except the first runs on its own thread, the first is
+	 * driven by {@link Server#update(int)}. */
+	class Reactor implements Runnable {
+		final Selector selector;
+		final ConcurrentLinkedQueue<SocketChannel> pendingAccepts = new ConcurrentLinkedQueue<SocketChannel>();
+		final ConcurrentLinkedQueue<Connection> pendingReleases = new ConcurrentLinkedQueue<Connection>();
+		final ConcurrentLinkedQueue<Connection> pendingFlushes = new ConcurrentLinkedQueue<Connection>();
+		final ConcurrentLinkedQueue<Connection> pendingFlushRequests = new ConcurrentLinkedQueue<Connection>();
+		final AtomicBoolean wakeupPending = new AtomicBoolean();
+		volatile Connection[] connections = {};
+		int emptySelects;
+		private volatile Thread thread;
+
+		Reactor (Selector selector) {
+			this.selector = selector;
+		}
+
+		void start (String name) {
+			Thread thread = new Thread(this, name);
+			this.thread = thread; // Any thread left over from before a restart exits once it sees it was replaced.
+			thread.start();
+		}
+
+		public void run () {
+			if (TRACE) trace("kryonet", "Server reactor thread started.");
+			while (!shutdown && thread == Thread.currentThread()) {
+				try {
+					update(250);
+				} catch (IOException ex) {
+					if (ERROR) error("kryonet", "Error updating server reactor connections.", ex);
+				}
+			}
+			if (TRACE) trace("kryonet", "Server reactor thread stopped.");
+		}
+
+		/** Hands a newly accepted socket to this reactor. It is registered by the reactor's own thread, as registering with a
+		 * selector blocks while another thread is selecting on it. */
+		void queueAccept (SocketChannel socketChannel) {
+			pendingAccepts.add(socketChannel);
+			selector.wakeup();
+		}
+
+		private void update (int timeout) throws IOException {
+			releaseClosed();
+			SocketChannel socketChannel;
+			while ((socketChannel = pendingAccepts.poll()) != null)
+				acceptOperation(this, socketChannel);
+			flush();
+
+			long startTime = System.currentTimeMillis();
+			int select = selector.select(timeout);
+			if (select == 0) {
+				emptySelect(startTime);
+			} else {
+				emptySelects = 0;
+				Set<SelectionKey> keys = selector.selectedKeys();
+				for (Iterator<SelectionKey> iter = keys.iterator(); iter.hasNext();) {
+					SelectionKey selectionKey = iter.next();
+					iter.remove();
+					Connection fromConnection = (Connection)selectionKey.attachment();
+					try {
+						if (fromConnection != null)
+							tcpOperation(fromConnection, selectionKey.readyOps());
+						else
+							selectionKey.channel().close();
+					} catch (CancelledKeyException ex) {
+						if (fromConnection != null)
+							fromConnection.close();
+						else
+							selectionKey.channel().close();
+					}
+				}
+			}
+			keepAlive();
+		}
+
+		void emptySelect (long startTime) {
+			emptySelects++;
+			if (emptySelects == 100) {
+				emptySelects = 0;
+				// NIO freaks and returns immediately with 0 sometimes, so try to keep from hogging the CPU.
+				long elapsedTime = System.currentTimeMillis() - startTime;
+				try {
+					if (elapsedTime < 25) Thread.sleep(25 - elapsedTime);
+				} catch (InterruptedException ex) {
+				}
+			}
+		}
+
+		void keepAlive () {
+			long time = System.currentTimeMillis();
+			Connection[] connections = this.connections;
+			for (int i = 0, n = connections.length; i < n; i++) {
+				Connection connection = connections[i];
+				if (connection.tcp.isTimedOut(time)) {
+					if (DEBUG) debug("kryonet", connection + " timed out.");
+					connection.close();
+				} else {
+					if (connection.tcp.needsKeepAlive(time)) connection.sendTCP(FrameworkMessage.keepAlive);
+				}
+				if (connection.isIdle()) connection.notifyIdle();
+			}
+		}
+
+		/** Queues a corked connection to be written on the next flush pass. This method is thread safe. When called from a thread
+		 * other than the reactor's, the selector is woken up unless it has been already since the last flush pass. */
+		void queueFlush (Connection connection) {
+			pendingFlushes.add(connection);
+			wakeupForFlush();
+		}
+
+		/** Queues {@link Connection#onFlush()} to be called on the next flush pass, see {@link Connection#requestFlush()}. This
+		 * method is thread safe. */
+		void queueFlushRequest (Connection connection) {
+			pendingFlushRequests.add(connection);
+			wakeupForFlush();
+		}
+
+		private void wakeupForFlush () {
+			if (Thread.currentThread() != thread && !wakeupPending.getAndSet(true)) selector.wakeup();
+		}
+
+		/** Calls {@link Connection#onFlush()} for every connection that requested it, then writes every connection queued for a
+		 * flush. Must only be called by the reactor's thread, before it selects. */
+		void flush () {
+			wakeupPending.set(false);
+			Connection connection;
+			while ((connection = pendingFlushRequests.poll()) != null) {
+				try {
+					connection.onFlush();
+				} catch (RuntimeException ex) {
+					if (ERROR) error("kryonet", "Error flushing connection: " + connection, ex);
+				}
+			}
+			while ((connection = pendingFlushes.poll()) != null) {
+				try {
+					connection.tcp.flush();
+				} catch (IOException ex) {
+					if (TRACE) {
+						trace("kryonet", "Unable to write TCP to connection: " + connection, ex);
+					} else if (DEBUG) {
+						debug("kryonet", connection + " update: " + ex.getMessage());
+					}
+					connection.close();
+				}
+			}
+		}
+
+		synchronized void addConnection (Connection connection) {
+			connections = add(connections, connection);
+		}
+
+		synchronized void removeConnection (Connection connection) {
+			Connection[] connections = this.connections;
+			this.connections = remove(connections, connection);
+			// The connection may be closed by any thread, so its buffers are released by this reactor's thread once it's sure to
+			// be done reading from them.
+			if (this.connections != connections) pendingReleases.add(connection);
+		}
+
+		/** Returns the buffers of removed connections to their pools. Must only be called by the reactor's thread, between
+		 * selects. */
+		void releaseClosed () {
+			Connection connection;
+			while ((connection = pendingReleases.poll()) != null)
+				connection.tcp.releaseBuffers();
+		}
+	}
 }
@@ -10,6 +10,8 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 
+import com.esotericsoftware.kryo.util.IntArray;
+
 import static com.esotericsoftware.minlog.Log.*;
 
 /** @author Nathan Sweet <misc@n4te.com> */
@@ -18,7 +20,7 @@ class TcpConnection {
 
 	SocketChannel socketChannel;
 	int keepAliveMillis = 8000;
-	final ByteBuffer readBuffer, writeBuffer;
+	ByteBuffer readBuffer, writeBuffer;
 	boolean bufferPositionFix;
 	int timeoutMillis = 12000;
 	float idleThreshold = 0.1f;
@@ -28,11 +30,29 @@ class TcpConnection {
 	private volatile long lastWriteTime, lastReadTime;
 	private int currentObjectLength;
 	private final Object writeLock = new Object();
+	private final BufferPool writePool, readPool;
+	/** Droppable frames held back while the write buffer is draining, see {@link #sendFramed(Connection, ByteBuffer, boolean)}.
+	 * Allocated on first use. */
+	private ByteBuffer heldBuffer;
+	private final IntArray heldLengths = new IntArray();
+	volatile int droppedFrames;
+	/** If not null, sends only queue bytes and this reactor writes them on its next flush pass. */
+	Server.Reactor reactor;
+	private boolean flushPending;
 
 	public TcpConnection (Serialization serialization, int writeBufferSize, int objectBufferSize) {
+		this(serialization, writeBufferSize, objectBufferSize, null, null);
+	}
+
+	/** @param writePool May be null to allocate a heap write buffer.
+	 * @param readPool May be null to allocate a heap read buffer. */
+	TcpConnection (Serialization serialization, int writeBufferSize, int objectBufferSize, BufferPool writePool,
+		BufferPool readPool) {
 		this.serialization = serialization;
-		writeBuffer = ByteBuffer.allocate(writeBufferSize);
-		readBuffer = ByteBuffer.allocate(objectBufferSize);
+		this.writePool = writePool;
+		this.readPool = readPool;
+		writeBuffer = writePool != null ? writePool.acquire() : ByteBuffer.allocate(writeBufferSize);
+		readBuffer = readPool != null ? readPool.acquire() : ByteBuffer.allocate(objectBufferSize);
 		readBuffer.flip();
 	}
 
@@ -40,6 +60,8 @@ class TcpConnection {
 		writeBuffer.clear();
 		readBuffer.clear();
 		readBuffer.flip();
+		clearHeld();
+		flushPending = false;
 		currentObjectLength = 0;
 		try {
 			this.socketChannel = socketChannel;
@@ -68,6 +90,8 @@ class TcpConnection {
 		writeBuffer.clear();
 		readBuffer.clear();
 		readBuffer.flip();
+		clearHeld();
+		flushPending = false;
 		currentObjectLength = 0;
 		try {
 			SocketChannel socketChannel = selector.provider().openSocketChannel();
@@ -164,24 +188,33 @@ class TcpConnection {
 		if (socketChannel == null) throw new SocketException("Connection is closed.");
 
 		ByteBuffer buffer = writeBuffer;
-		buffer.flip();
-		while (buffer.hasRemaining()) {
-			if (bufferPositionFix) {
-				buffer.compact();
-				buffer.flip();
+		while (true) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				if (bufferPositionFix) {
+					buffer.compact();
+					buffer.flip();
+				}
+				if (socketChannel.write(buffer) == 0) break;
 			}
-			if (socketChannel.write(buffer) == 0) break;
+			buffer.compact();
+
+			// Once everything else is written, the droppable frames that were held back go next.
+			if (buffer.position() > 0 || heldLengths.size == 0) break;
+			heldBuffer.flip();
+			buffer.put(heldBuffer);
+			clearHeld();
 		}
-		buffer.compact();
 
 		return buffer.position() == 0;
 	}
 
 	/** This method is thread safe. */
 	public int send (Connection connection, Object object) throws IOException {
-		SocketChannel socketChannel = this.socketChannel;
-		if (socketChannel == null) throw new SocketException("Connection is closed.");
 		synchronized (writeLock) {
+			// Checked while holding the lock, as the buffers may be released once the connection is closed.
+			if (socketChannel == null) throw new SocketException("Connection is closed.");
+
 			// Leave room for length.
 			int start = writeBuffer.position();
 			int lengthLength = serialization.getLengthLength();
@@ -200,25 +233,118 @@ class TcpConnection {
 			serialization.writeLength(writeBuffer, end - lengthLength - start);
 			writeBuffer.position(end);
 
-			// Write to socket if no data was queued.
-			if (start == 0 && !writeToSocket()) {
-				// A partial write, set OP_WRITE to be notified when more writing can occur.
-				selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-			} else {
-				// Full write, wake up selector so idle event will be fired.
-				selectionKey.selector().wakeup();
-			}
+			return flushQueued(connection, start, end);
+		}
+	}
 
-			if (DEBUG || TRACE) {
-				float percentage = writeBuffer.position() / (float)writeBuffer.capacity();
-				if (DEBUG && percentage > 0.75f)
-					debug("kryonet", connection + " TCP write buffer is approaching capacity: " + percentage + "%");
-				else if (TRACE && percentage > 0.25f)
-					trace("kryonet", connection + " TCP write buffer utilization: " + percentage + "%");
+	/** Queues a frame previously produced by {@link Server#frameTCP(ByteBuffer, Object)}, without serializing it again. The bytes
+	 * between the frame's position and limit are copied, and the frame's position is left unchanged so it can be sent to other
+	 * connections. If droppable is true and the write buffer is not empty, ie the socket is not keeping up, the frame is held back
+	 * until everything in the write buffer is written. At most half the write buffer size is held back, after which the oldest
+	 * held back frames are dropped, so droppable frames can't fill the write buffer and a slow peer costs neither memory nor the
+	 * connection. Droppable frames may be sent after frames that were queued later but are not droppable. This method is thread
+	 * safe.
+	 * @return the number of bytes queued. */
+	public int sendFramed (Connection connection, ByteBuffer frame, boolean droppable) throws IOException {
+		synchronized (writeLock) {
+			if (socketChannel == null) throw new SocketException("Connection is closed.");
+
+			if (droppable && isBackedUp(frame.remaining())) return holdBack(connection, frame);
+
+			int start = writeBuffer.position();
+			if (writeBuffer.remaining() < frame.remaining())
+				throw new KryoNetException("Write buffer overflow, unable to queue frame of length: " + frame.remaining());
+
+			int framePosition = frame.position();
+			writeBuffer.put(frame);
+			frame.position(framePosition);
+
+			return flushQueued(connection, start, writeBuffer.position());
+		}
+	}
+
+	/** Returns true if a droppable frame should be held back, because the write buffer holds bytes that could not be written to the
+	 * socket yet or, when corked, queueing the frame would leave less than half the write buffer for frames that can't be
+	 * dropped. Held back frames are moved to the write buffer as soon as it empties, so none are held back while it is empty. */
+	private boolean isBackedUp (int length) {
+		int position = writeBuffer.position();
+		if (position == 0) return false;
+		if (!flushPending || heldLengths.size > 0) return true;
+		return position + length > writeBuffer.capacity() / 2;
+	}
+
+	/** Holds back a droppable frame, dropping the oldest held back frames to make room if needed. Must be called while holding the
+	 * write lock.
+	 * @return the number of bytes queued. */
+	private int holdBack (Connection connection, ByteBuffer frame) {
+		if (heldBuffer == null) heldBuffer = ByteBuffer.allocate(writeBuffer.capacity() / 2);
+		int length = frame.remaining();
+		if (length > heldBuffer.capacity()) {
+			droppedFrames++;
+			if (DEBUG) debug("kryonet", connection + " TCP dropped frame too large to hold back: " + length);
+			return 0;
+		}
+
+		while (heldBuffer.remaining() < length) {
+			heldBuffer.flip();
+			heldBuffer.position(heldLengths.removeIndex(0));
+			heldBuffer.compact();
+			droppedFrames++;
+		}
+		if (TRACE) trace("kryonet", connection + " TCP holding back frame, dropped frames: " + droppedFrames);
+
+		int framePosition = frame.position();
+		heldBuffer.put(frame);
+		frame.position(framePosition);
+		heldLengths.add(length);
+		return length;
+	}
+
+	private void clearHeld () {
+		if (heldBuffer != null) heldBuffer.clear();
+		heldLengths.clear();
+	}
+
+	/** Writes to the socket after bytes from start to end were queued in the write buffer. Must be called while holding the write
+	 * lock.
+	 * @return the number of bytes queued. */
+	private int flushQueued (Connection connection, int start, int end) throws IOException {
+		if (reactor != null) {
+			// Corked, the bytes are written by the reactor's next flush pass along with anything else queued until then.
+			if (start == 0 && !flushPending) {
+				flushPending = true;
+				reactor.queueFlush(connection);
 			}
+		} else if (start == 0 && !writeToSocket()) { // Write to socket if no data was queued.
+			// A partial write, set OP_WRITE to be notified when more writing can occur.
+			selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else {
+			// Full write, wake up selector so idle event will be fired.
+			selectionKey.selector().wakeup();
+		}
 
-			lastWriteTime = System.currentTimeMillis();
-			return end - start;
+		if (DEBUG || TRACE) {
+			float percentage = writeBuffer.position() / (float)writeBuffer.capacity();
+			if (DEBUG && percentage > 0.75f)
+				debug("kryonet", connection + " TCP write buffer is approaching capacity: " + percentage + "%");
+			else if (TRACE && percentage > 0.25f)
+				trace("kryonet", connection + " TCP write buffer utilization: " + percentage + "%");
+		}
+
+		lastWriteTime = System.currentTimeMillis();
+		return end - start;
+	}
+
+	/** Writes the bytes queued since the connection was queued with its reactor for a flush. */
+	void flush () throws IOException {
+		synchronized (writeLock) {
+			if (!flushPending) return;
+			flushPending = false;
+			if (socketChannel == null) return; // Closed, the buffers may have been released.
+			if (!writeToSocket()) {
+				// A partial write, set OP_WRITE to be notified when more writing can occur.
+				selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
 		}
 	}
 
@@ -234,6 +360,23 @@ class TcpConnection {
 		}
 	}
 
+	/** Returns pooled buffers to their pools. Must only be called once the connection is closed, by the thread that reads from
+	 * it, so a read can't be in progress. Writes check the connection is open while holding the write lock, so none can be in
+	 * progress or start once the lock is taken here. */
+	void releaseBuffers () {
+		synchronized (writeLock) {
+			if (socketChannel != null) throw new IllegalStateException("Connection is open.");
+			if (writePool != null) {
+				writePool.release(writeBuffer);
+				writeBuffer = null;
+			}
+			if (readPool != null) {
+				readPool.release(readBuffer);
+				readBuffer = null;
+			}
+		}
+	}
+
 	public boolean needsKeepAlive (long time) {
 		return socketChannel != null && keepAliveMillis > 0 && time - lastWriteTime > keepAliveMillis;
 	}
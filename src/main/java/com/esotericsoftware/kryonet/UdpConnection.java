@@ -24,8 +24,13 @@ class UdpConnection {
 	private long lastCommunicationTime;
 
 	public UdpConnection (Serialization serialization, int bufferSize) {
+		this(serialization, bufferSize, false);
+	}
+
+	/** @param directReadBuffer If true the read buffer is a direct buffer, so datagrams are received without an extra copy. */
+	public UdpConnection (Serialization serialization, int bufferSize, boolean directReadBuffer) {
 		this.serialization = serialization;
-		readBuffer = ByteBuffer.allocate(bufferSize);
+		readBuffer = directReadBuffer ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
 		writeBuffer = ByteBuffer.allocateDirect(bufferSize);
 	}
 
@@ -118,6 +123,28 @@ class UdpConnection {
 		}
 	}
 
+	/** Sends the bytes of a frame produced by {@link Server#frameTCP(ByteBuffer, Object)}, skipping its length prefix. The
+	 * frame's position is left unchanged. This method is thread safe.
+	 * @return The number of bytes sent, or -1 if the socket buffer was full. */
+	public int sendFramed (ByteBuffer frame, int lengthLength, SocketAddress address) throws IOException {
+		DatagramChannel datagramChannel = this.datagramChannel;
+		if (datagramChannel == null) throw new SocketException("Connection is closed.");
+		synchronized (writeLock) {
+			int framePosition = frame.position();
+			try {
+				frame.position(framePosition + lengthLength);
+				int length = frame.remaining();
+				int sent = datagramChannel.send(frame, address);
+
+				lastCommunicationTime = System.currentTimeMillis();
+
+				return sent == length ? length : -1;
+			} finally {
+				frame.position(framePosition);
+			}
+		}
+	}
+
 	public void close () {
 		connectedAddress = null;
 		try {
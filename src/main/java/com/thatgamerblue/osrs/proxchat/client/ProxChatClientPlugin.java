@@ -15,8 +15,8 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
-import net.runelite.api.events.ClientTick;
 import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GameTick;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
@@ -176,6 +176,12 @@ public class ProxChatClientPlugin extends Plugin
 			return;
 		}
 
+		// e.g. the audio mode changing can start or stop capture
+		if (micThread != null)
+		{
+			micThread.wake();
+		}
+
 		if (RECONNECT_CONFIGS.contains(event.getKey()))
 		{
 			executor.submit(() ->
@@ -196,14 +202,14 @@ public class ProxChatClientPlugin extends Plugin
 	}
 
 	/**
-	 * Event fired roughly every 20ms by the RuneScape client
+	 * Event fired every game tick, 600ms, by the RuneScape client
 	 *
 	 * @param event ignored
 	 */
 	@Subscribe
-	public void onClientTick(ClientTick event)
+	public void onGameTick(GameTick event)
 	{
-		network.sendUpdate(client.getGameState().getState());
+		network.onGameTick(client.getGameState().getState());
 	}
 
 	/**
@@ -214,6 +220,12 @@ public class ProxChatClientPlugin extends Plugin
 	@Subscribe
 	public void onGameStateChanged(GameStateChanged event)
 	{
+		// capture only runs while logged in
+		if (micThread != null)
+		{
+			micThread.wake();
+		}
+
 		if (event.getGameState().getState() < GameState.LOGIN_SCREEN.getState())
 		{
 			return;
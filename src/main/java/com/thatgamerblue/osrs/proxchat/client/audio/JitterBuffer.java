@@ -0,0 +1,334 @@
+package com.thatgamerblue.osrs.proxchat.client.audio;
+
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
+import lombok.Getter;
+
+/**
+ * Adaptive playout buffer for a single speaker's frames
+ * <p>
+ * Frames are slotted by sequence number and played out one per {@link AudioConstants#MS_PER_PACKET}. How many frames are held
+ * back before playout starts follows the measured interarrival jitter, frames that arrive after their turn to play are thrown
+ * away, and when the buffer grows past its target it catches up by skipping quiet frames.
+ * <p>
+ * Frames are borrowed from a pool. The buffer gives back every frame it throws away, frames returned by {@link #pop()} are
+ * the caller's to release.
+ */
+public class JitterBuffer
+{
+	/**
+	 * Number of sequence numbers the buffer can hold, one second of audio
+	 */
+	private static final int CAPACITY = 1000 / AudioConstants.MS_PER_PACKET;
+
+	/**
+	 * Fewest frames held back before playout starts
+	 */
+	private static final int MIN_DEPTH = 2;
+
+	/**
+	 * Most frames held back before playout starts, and the hard limit on how far playout may lag behind the newest frame
+	 */
+	private static final int MAX_DEPTH = 200 / AudioConstants.MS_PER_PACKET;
+
+	/**
+	 * Multiple of the jitter estimate to buffer for, covers nearly all arrivals for typical jitter distributions
+	 */
+	private static final float JITTER_MULTIPLIER = 3.0f;
+
+	/**
+	 * Frames over the target depth tolerated before quiet frames start getting skipped
+	 */
+	private static final int CATCH_UP_MARGIN = 2;
+
+	/**
+	 * Level in db below which a frame is quiet enough to skip while catching up
+	 */
+	private static final double SILENCE_THRESHOLD = -50D;
+
+	/**
+	 * Buffered frames, indexed by sequence number modulo {@link #CAPACITY}
+	 */
+	private final S2CMicPacket[] slots = new S2CMicPacket[CAPACITY];
+
+	/**
+	 * Pool the frames were borrowed from
+	 */
+	private final ObjectPool<S2CMicPacket> pool;
+
+	/**
+	 * Number of frames currently in {@link #slots}
+	 */
+	private int count;
+
+	/**
+	 * Is playout running, false while prefetching at the start of a talk spurt
+	 */
+	@Getter
+	private boolean playing;
+
+	/**
+	 * Sequence number of the next frame to play
+	 */
+	private int playoutSequence;
+
+	/**
+	 * Highest sequence number currently buffered
+	 */
+	private int highestSequence;
+
+	/**
+	 * Has the sender said the current talk spurt is over, so nothing more will arrive to fill the buffer
+	 */
+	private boolean ended;
+
+	/**
+	 * Has a frame been received yet, so {@link #lastTransit} is valid
+	 */
+	private boolean hasTransit;
+
+	/**
+	 * Arrival time minus capture time of the last frame received
+	 */
+	private int lastTransit;
+
+	/**
+	 * Smoothed interarrival jitter, in milliseconds, as described in RFC 3550 section 6.4.1
+	 */
+	private float jitter;
+
+	/**
+	 * Frames thrown away because they arrived after their turn to play
+	 */
+	@Getter
+	private int lateFrames;
+
+	/**
+	 * Frames skipped to bring the latency back down
+	 */
+	@Getter
+	private int droppedFrames;
+
+	/**
+	 * Frames that were missing when their turn to play came
+	 */
+	@Getter
+	private int lostFrames;
+
+	/**
+	 * Creates an empty buffer
+	 *
+	 * @param pool pool the frames are borrowed from, thrown away frames are released to it
+	 */
+	public JitterBuffer(ObjectPool<S2CMicPacket> pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Buffers a frame received from the network
+	 *
+	 * @param packet frame to buffer, owned by the buffer from now on
+	 */
+	public void push(S2CMicPacket packet)
+	{
+		push(packet, (int) System.currentTimeMillis());
+	}
+
+	/**
+	 * Buffers a frame received from the network
+	 *
+	 * @param packet  frame to buffer, owned by the buffer from now on
+	 * @param arrival time the frame arrived, in milliseconds
+	 */
+	public synchronized void push(S2CMicPacket packet, int arrival)
+	{
+		updateJitter(arrival - packet.timestamp);
+
+		int sequence = packet.sequence;
+		if (count == 0 && !playing)
+		{
+			// start of a talk spurt
+			playoutSequence = sequence;
+			highestSequence = sequence;
+		}
+
+		int offset = sequence - playoutSequence;
+		if (offset < -CAPACITY || offset >= CAPACITY)
+		{
+			// the sender restarted its sequence or was gone for a long time, start over from this frame
+			clear();
+			playoutSequence = sequence;
+			highestSequence = sequence;
+		}
+		else if (offset < 0)
+		{
+			// a frame so far behind the newest that the slots would alias is as good as late
+			if (playing || highestSequence - sequence >= CAPACITY)
+			{
+				lateFrames++;
+				pool.release(packet);
+				return;
+			}
+
+			// arrived out of order before playout started, play it first
+			playoutSequence = sequence;
+		}
+
+		int index = index(sequence);
+		if (slots[index] != null)
+		{
+			// duplicate
+			pool.release(packet);
+			return;
+		}
+
+		slots[index] = packet;
+		count++;
+		if (sequence - highestSequence > 0)
+		{
+			highestSequence = sequence;
+		}
+	}
+
+	/**
+	 * Takes the next frame to play, should be called once per {@link AudioConstants#MS_PER_PACKET}
+	 *
+	 * @return the next frame, which the caller must release to the pool, or null if there is nothing to play. If
+	 * {@link #isPlaying()} is still true the frame was lost and should be concealed, otherwise the buffer is waiting for a
+	 * talk spurt to start
+	 */
+	public synchronized S2CMicPacket pop()
+	{
+		if (count == 0)
+		{
+			// talk spurt ended or the buffer ran dry, prefetch again before resuming
+			playing = false;
+			ended = false;
+			return null;
+		}
+
+		int target = getTargetDepth();
+		if (!playing)
+		{
+			// a spurt shorter than the target depth is played as soon as it's known to be complete
+			if (depth() < target && !ended)
+			{
+				return null;
+			}
+			playing = true;
+		}
+
+		while (depth() > target + CATCH_UP_MARGIN)
+		{
+			S2CMicPacket head = slots[index(playoutSequence)];
+			if (head != null && depth() <= MAX_DEPTH && AudioUtil.calculateAudioLevel(head.data) > SILENCE_THRESHOLD)
+			{
+				break;
+			}
+
+			pool.release(take(playoutSequence++));
+			droppedFrames++;
+		}
+
+		S2CMicPacket packet = take(playoutSequence++);
+		if (packet == null)
+		{
+			lostFrames++;
+		}
+		return packet;
+	}
+
+	/**
+	 * Marks the end of the current talk spurt, the buffered frames are played out and the buffer then closes
+	 * instead of waiting for the prefetch depth to be reached
+	 */
+	public synchronized void endSpurt()
+	{
+		ended = count > 0;
+	}
+
+	/**
+	 * Number of frames playout should be held back by for the currently measured jitter
+	 *
+	 * @return target depth in frames
+	 */
+	public synchronized int getTargetDepth()
+	{
+		int frames = (int) Math.ceil(JITTER_MULTIPLIER * jitter / AudioConstants.MS_PER_PACKET) + 1;
+		return Math.max(MIN_DEPTH, Math.min(frames, MAX_DEPTH));
+	}
+
+	/**
+	 * Throws away every buffered frame and waits for the next talk spurt
+	 */
+	public synchronized void clear()
+	{
+		for (int i = 0; i < slots.length; i++)
+		{
+			pool.release(slots[i]);
+			slots[i] = null;
+		}
+		count = 0;
+		playing = false;
+		ended = false;
+	}
+
+	/**
+	 * Folds the transit time of a frame into the jitter estimate
+	 *
+	 * @param transit arrival time minus capture time of the frame
+	 */
+	private void updateJitter(int transit)
+	{
+		if (hasTransit)
+		{
+			int difference = Math.abs(transit - lastTransit);
+			jitter += (difference - jitter) / 16f;
+		}
+		lastTransit = transit;
+		hasTransit = true;
+	}
+
+	/**
+	 * Removes a frame from its slot
+	 *
+	 * @param sequence sequence number of the frame
+	 * @return the frame, or null if it isn't buffered
+	 */
+	private S2CMicPacket take(int sequence)
+	{
+		int index = index(sequence);
+		S2CMicPacket packet = slots[index];
+		if (packet == null || packet.sequence != sequence)
+		{
+			return null;
+		}
+
+		slots[index] = null;
+		count--;
+		return packet;
+	}
+
+	/**
+	 * Number of frames from the playout point up to and including the newest frame
+	 *
+	 * @return depth in frames
+	 */
+	private int depth()
+	{
+		return highestSequence - playoutSequence + 1;
+	}
+
+	/**
+	 * Slot a sequence number maps to
+	 *
+	 * @param sequence sequence number
+	 * @return index into {@link #slots}
+	 */
+	private static int index(int sequence)
+	{
+		return Math.floorMod(sequence, CAPACITY);
+	}
+}
@@ -2,8 +2,6 @@ package com.thatgamerblue.osrs.proxchat.client.audio;
 
 import com.thatgamerblue.osrs.proxchat.client.net.ClientNetworkHandler;
 import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
-import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SMicPacket;
-import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import javax.sound.sampled.AudioSystem;
@@ -65,6 +63,22 @@ public class MicThread extends Thread
 	 * Hold-on time before deactivating mic output
 	 */
 	private long micHoldOnTime = -1;
+	/**
+	 * Monitor the thread parks on while there is nothing to capture
+	 */
+	private final Object parkLock = new Object();
+	/**
+	 * Sequence number of the next frame to send
+	 */
+	private int sequence = 0;
+	/**
+	 * Decides which frames to send in voice activity mode
+	 */
+	private final VoiceActivityDetector vad = new VoiceActivityDetector();
+	/**
+	 * Is a talk spurt being sent, i.e. has a frame been sent since the last spurt end marker
+	 */
+	private boolean inSpurt = false;
 
 	/**
 	 * Constructs a new thread to read microphone pcm data
@@ -108,6 +122,9 @@ public class MicThread extends Thread
 
 	/**
 	 * Blasts voice data across the network. Good luck everybody else!
+	 * <p>
+	 * While there is something to send, each read blocks until the mic has a full frame. Whenever there isn't, e.g. while
+	 * muted, disconnected or logged out, the mic is stopped and the thread parks until {@link #wake()} is called.
 	 */
 	@Override
 	public void run()
@@ -121,35 +138,23 @@ public class MicThread extends Thread
 
 		while (running.get())
 		{
-			if (toggleMute.get())
+			if (!shouldCapture())
 			{
-				sleep(1);
+				park();
 				continue;
 			}
 
-			if (!networkHandler.isConnected())
+			if (!mic.isRunning())
 			{
-				sleep(1);
-				continue;
+				mic.start();
 			}
 
-			GameState currentState = gameStateSupplier.get();
-			if (currentState != GameState.LOADING && currentState != GameState.LOGGED_IN)
+			if (mic.read(inBuf, 0, inBuf.length) < inBuf.length)
 			{
-				sleep(1);
+				// the line was stopped part way through the frame
 				continue;
 			}
 
-			mic.start();
-			int avail = mic.available();
-			if (avail < AudioConstants.FRAME_SIZE)
-			{
-				sleep(1);
-				continue;
-			}
-
-			Arrays.fill(inBuf, (byte) 0);
-			mic.read(inBuf, 0, inBuf.length);
 			AudioUtil.amplify(inBuf, amplificationSupplier.get() / 25.f);
 
 			switch (audioModeSupplier.get())
@@ -158,31 +163,32 @@ public class MicThread extends Thread
 					if (pttDown.get())
 					{
 						micHoldOnTime = System.currentTimeMillis() + MIC_HOLDON_TIME_DELAY;
-						networkHandler.sendTCP(new C2SMicPacket(inBuf));
+						sendFrame(inBuf);
 						continue;
 					}
 					break;
 				case VOICE_ACTIVITY:
+					// the detector's hangover takes the place of the hold-on time
 					double highestLvl = AudioUtil.calculateAudioLevel(inBuf);
-					if (highestLvl > thresholdSupplier.get())
+					if (vad.isActive(highestLvl, thresholdSupplier.get()))
 					{
-						micHoldOnTime = System.currentTimeMillis() + MIC_HOLDON_TIME_DELAY;
-						networkHandler.sendTCP(new C2SMicPacket(inBuf));
+						sendFrame(inBuf);
 						continue;
 					}
-					break;
+					endSpurt();
+					continue;
 			}
 
 			if (micHoldOnTime > System.currentTimeMillis())
 			{
 				// if the mic is being held on, send data anyway
-				networkHandler.sendTCP(new C2SMicPacket(inBuf));
+				sendFrame(inBuf);
 				continue;
 			}
 
 			// if we reached here we haven't transmitted anything
-			// the sendTCP calls above will set the boolean to true when we send a mic packet
-			networkHandler.getMicTransmitting().set(false);
+			// the sendFrame calls above will set the boolean to true when we send a mic packet
+			endSpurt();
 		}
 
 		log.info("MicThread stopping...");
@@ -191,12 +197,101 @@ public class MicThread extends Thread
 		mic.close();
 	}
 
+	/**
+	 * Is there any point reading from the mic right now
+	 *
+	 * @return false if nothing read could be sent, e.g. while muted, disconnected, logged out
+	 * or in push to talk mode with the key released
+	 */
+	private boolean shouldCapture()
+	{
+		if (toggleMute.get() || !networkHandler.isConnected())
+		{
+			return false;
+		}
+
+		GameState currentState = gameStateSupplier.get();
+		if (currentState != GameState.LOADING && currentState != GameState.LOGGED_IN)
+		{
+			return false;
+		}
+
+		return audioModeSupplier.get() != AudioMode.PUSH_TO_TALK || pttDown.get() || micHoldOnTime > System.currentTimeMillis();
+	}
+
+	/**
+	 * Stops the mic and waits until there is something to capture again
+	 */
+	private void park()
+	{
+		endSpurt();
+		vad.reset();
+
+		// throw away anything captured before parking, so we don't send stale audio when we resume
+		mic.stop();
+		mic.flush();
+
+		synchronized (parkLock)
+		{
+			while (running.get() && !shouldCapture())
+			{
+				try
+				{
+					parkLock.wait();
+				}
+				catch (InterruptedException ignored)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wakes the thread up if it's parked, so it can check if it should be capturing.
+	 * Must be called after anything {@link #shouldCapture()} depends on changes.
+	 */
+	public void wake()
+	{
+		synchronized (parkLock)
+		{
+			parkLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Sends a frame of microphone data to the server, numbered so the listeners can put it back in order
+	 *
+	 * @param frame pcm microphone data
+	 */
+	private void sendFrame(byte[] frame)
+	{
+		int flags = inSpurt ? 0 : AudioConstants.FLAG_SPURT_START;
+		inSpurt = true;
+		networkHandler.sendMic(frame, sequence++, (int) System.currentTimeMillis(), flags);
+	}
+
+	/**
+	 * Stops transmitting, sending a spurt end marker if a spurt was being sent, so silence costs nothing on the wire
+	 */
+	private void endSpurt()
+	{
+		if (!inSpurt)
+		{
+			networkHandler.getMicTransmitting().set(false);
+			return;
+		}
+
+		inSpurt = false;
+		networkHandler.sendMicEnd(sequence++, (int) System.currentTimeMillis());
+	}
+
 	/**
 	 * Stops this thread from running and cleans up
 	 */
 	public void end()
 	{
 		running.set(false);
+		wake();
 	}
 
 	/**
@@ -207,6 +302,7 @@ public class MicThread extends Thread
 	public void setPttDown(boolean ptt)
 	{
 		pttDown.set(ptt);
+		wake();
 	}
 
 	/**
@@ -222,6 +318,7 @@ public class MicThread extends Thread
 			v = toggleMute.get();
 		}
 		while (!toggleMute.compareAndSet(v, !v));
+		wake();
 	}
 
 	/**
@@ -233,20 +330,4 @@ public class MicThread extends Thread
 	{
 		return toggleMute.get();
 	}
-
-	/**
-	 * Sleeps for {@code ms} milliseconds
-	 *
-	 * @param ms ms to sleep for
-	 */
-	private void sleep(int ms)
-	{
-		try
-		{
-			Thread.sleep(ms);
-		}
-		catch (InterruptedException ignored)
-		{
-		}
-	}
 }
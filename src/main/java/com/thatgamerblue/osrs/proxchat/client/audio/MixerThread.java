@@ -0,0 +1,500 @@
+package com.thatgamerblue.osrs.proxchat.client.audio;
+
+import com.esotericsoftware.kryo.util.IntMap;
+import com.thatgamerblue.osrs.proxchat.common.audio.Attenuation;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodecs;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceDecoder;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.GameState;
+
+/**
+ * Mixes every speaker's audio into a single output line
+ * <p>
+ * Each speaker only gets a decoder and a jitter buffer, once per {@link AudioConstants#MS_PER_PACKET} one frame is taken
+ * from each of them, scaled by distance and summed in software, so the number of threads and audio lines stays the same
+ * however many players are talking.
+ */
+@Slf4j
+public class MixerThread extends Thread
+{
+	/**
+	 * Number of samples in one frame of mono audio
+	 */
+	private static final int FRAME_SAMPLES = AudioConstants.FRAME_SIZE / 2;
+
+	/**
+	 * Size of one frame of audio once converted to stereo
+	 */
+	private static final int STEREO_FRAME_SIZE = AudioConstants.FRAME_SIZE * 2;
+
+	/**
+	 * Frames kept queued in the speaker line, just enough to ride out scheduling delays of this thread
+	 */
+	private static final int LINE_FRAMES = 2;
+
+	/**
+	 * Bytes of stereo audio the speaker line plays per millisecond
+	 */
+	private static final int LINE_BYTES_PER_MS = STEREO_FRAME_SIZE / AudioConstants.MS_PER_PACKET;
+
+	/**
+	 * Milliseconds without a frame after which a speaker is forgotten, so one whose last frames arrived after it left
+	 * doesn't stay around forever
+	 */
+	private static final long SPEAKER_TIMEOUT = 10_000;
+
+	/**
+	 * Decoder and jitter buffer of each speaker, keyed by the speaker's session id. Only touched by the network thread.
+	 */
+	private final IntMap<Speaker> sources = new IntMap<>();
+
+	/**
+	 * Every speaker in {@link #sources}, replaced whenever a speaker comes or goes so the mixer can iterate it without locking
+	 */
+	private volatile Speaker[] speakers = new Speaker[0];
+
+	/**
+	 * Time after which {@link #sources} is next checked for speakers gone quiet. Only touched by the network thread.
+	 */
+	private long nextExpiry;
+
+	/**
+	 * Pool the mic packets were borrowed from, they're given back once played or dropped
+	 */
+	private final ObjectPool<S2CMicPacket> pool;
+
+	/**
+	 * Speaker output device
+	 */
+	private final SourceDataLine speaker;
+
+	/**
+	 * Atomic used to tell when the thread should stop
+	 */
+	private final AtomicBoolean running = new AtomicBoolean(true);
+
+	/**
+	 * Monitor the mixer waits on while no speaker is playing
+	 */
+	private final Object wakeup = new Object();
+
+	/**
+	 * Has a frame arrived since the mixer last looked, guarded by {@link #wakeup}
+	 */
+	private boolean woken;
+
+	/**
+	 * Output volume scale
+	 */
+	private final Supplier<Integer> volume;
+
+	/**
+	 * Current game state
+	 */
+	private final Supplier<GameState> gameState;
+
+	/**
+	 * Sum of every speaker's samples for the frame being mixed
+	 */
+	private final float[] mix = new float[FRAME_SAMPLES];
+
+	/**
+	 * Mixed frame converted to stereo, ready to be written to the line
+	 */
+	private final byte[] output = new byte[STEREO_FRAME_SIZE];
+
+	/**
+	 * Constructs a thread to mix and play mic data
+	 *
+	 * @param pool      pool the mic packets are borrowed from, each packet's data must hold a whole frame of pcm
+	 * @param volume    volume of the speaker
+	 * @param gameState current client game state
+	 */
+	public MixerThread(
+		ObjectPool<S2CMicPacket> pool,
+		Supplier<Integer> volume,
+		Supplier<GameState> gameState
+	)
+	{
+		this.pool = pool;
+		this.volume = volume;
+		this.gameState = gameState;
+
+		SourceDataLine __speaker;
+		try
+		{
+			DataLine.Info info = new DataLine.Info(SourceDataLine.class, null);
+			__speaker = (SourceDataLine) AudioSystem.getLine(info);
+		}
+		catch (LineUnavailableException e)
+		{
+			log.error("Failed to initialize speaker", e);
+			__speaker = null;
+		}
+		speaker = __speaker;
+
+		setDaemon(true);
+		setName("Prox-MixerThread");
+	}
+
+	/**
+	 * Mixes and plays one frame every time the speaker line is close to running dry, so the buffering
+	 * happens in the jitter buffers rather than in the line. Waits for the next frame to arrive while nobody is talking.
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			speaker.open(AudioConstants.STEREO_FORMAT, STEREO_FRAME_SIZE * (LINE_FRAMES + 2));
+		}
+		catch (LineUnavailableException e)
+		{
+			log.error("Failed to initialize speaker", e);
+			speaker.close();
+			return;
+		}
+
+		while (running.get())
+		{
+			int queued = speaker.getBufferSize() - speaker.available();
+
+			// prevent the last sample from being repeated infinitely
+			if (queued <= 0 && speaker.isActive())
+			{
+				speaker.stop();
+			}
+
+			int excess = queued - STEREO_FRAME_SIZE * LINE_FRAMES;
+			if (excess >= 0)
+			{
+				// sleep until the line is down to less than LINE_FRAMES frames, so the loop wakes about once per frame
+				sleepQuietly(excess / LINE_BYTES_PER_MS + 1);
+				continue;
+			}
+
+			if (!mixFrame())
+			{
+				awaitFrame();
+				continue;
+			}
+
+			speaker.write(output, 0, output.length);
+			speaker.start();
+		}
+
+		speaker.stop();
+		speaker.close();
+		for (Speaker source : speakers)
+		{
+			source.buffer.clear();
+		}
+		speakers = new Speaker[0];
+	}
+
+	/**
+	 * Takes the next frame from every speaker and mixes them into {@link #output}
+	 *
+	 * @return false if no speaker is playing, in which case nothing should be written
+	 */
+	private boolean mixFrame()
+	{
+		Arrays.fill(mix, 0f);
+
+		GameState gs = gameState.get();
+		boolean audible = gs.getState() <= GameState.LOGGED_IN.getState() && gs.getState() >= GameState.LOADING.getState();
+		float volumeScale = (float) volume.get() / 50.0f;
+		boolean playing = false;
+
+		for (Speaker speaker : speakers)
+		{
+			JitterBuffer source = speaker.buffer;
+			S2CMicPacket packet = source.pop();
+			if (packet == null)
+			{
+				// a lost frame still holds the line open, it just contributes silence
+				playing |= source.isPlaying();
+				continue;
+			}
+
+			playing = true;
+			float gain = audible ? Attenuation.gain(packet.distance, volumeScale) : 0f;
+			if (gain > 0f)
+			{
+				byte[] data = packet.data;
+				int samples = Math.min(packet.length / 2, FRAME_SAMPLES);
+				for (int i = 0; i < samples; i++)
+				{
+					mix[i] += AudioUtil.bytesToShort(data[i * 2], data[i * 2 + 1]) * gain;
+				}
+			}
+			pool.release(packet);
+		}
+
+		if (!playing)
+		{
+			return false;
+		}
+
+		for (int i = 0; i < FRAME_SAMPLES; i++)
+		{
+			int sample = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+			byte lo = (byte) sample;
+			byte hi = (byte) (sample >> 8);
+
+			// left channel
+			output[i * 4] = lo;
+			output[i * 4 + 1] = hi;
+
+			// right channel
+			output[i * 4 + 2] = lo;
+			output[i * 4 + 3] = hi;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Lets the line play out what's queued, then waits until a frame arrives or the thread is stopped
+	 */
+	private void awaitFrame()
+	{
+		synchronized (wakeup)
+		{
+			if (woken)
+			{
+				woken = false;
+				return;
+			}
+		}
+
+		if (speaker.isActive())
+		{
+			speaker.drain();
+			speaker.stop();
+		}
+
+		synchronized (wakeup)
+		{
+			while (!woken && running.get())
+			{
+				try
+				{
+					wakeup.wait();
+				}
+				catch (InterruptedException ignored)
+				{
+				}
+			}
+			woken = false;
+		}
+	}
+
+	/**
+	 * Wakes the mixer if it's waiting for a frame
+	 */
+	private void wake()
+	{
+		synchronized (wakeup)
+		{
+			woken = true;
+			wakeup.notify();
+		}
+	}
+
+	/**
+	 * Sleeps without propagating interrupts, {@link #running} is checked by the caller instead
+	 *
+	 * @param millis time to sleep in milliseconds
+	 */
+	private static void sleepQuietly(int millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ignored)
+		{
+		}
+	}
+
+	/**
+	 * Stops this thread from running, leaves cleanup to the {@link MixerThread#run()} method
+	 */
+	public void destroy()
+	{
+		running.set(false);
+		wake();
+	}
+
+	/**
+	 * Decodes a mic packet and adds it to its speaker's jitter buffer, to be mixed in sequence order once enough has been
+	 * buffered. Only called from the network thread.
+	 *
+	 * @param micPacket microphone packet to buffer, borrowed from {@link #pool} and released by the mixer
+	 */
+	public void push(S2CMicPacket micPacket)
+	{
+		long now = System.currentTimeMillis();
+		if (now >= nextExpiry)
+		{
+			expireSpeakers(now);
+			nextExpiry = now + SPEAKER_TIMEOUT;
+		}
+
+		Speaker speaker = sources.get(micPacket.decoder);
+		if (speaker == null)
+		{
+			speaker = new Speaker(pool);
+			sources.put(micPacket.decoder, speaker);
+			updateSpeakers();
+		}
+		speaker.lastFrameTime = now;
+
+		if ((micPacket.flags & AudioConstants.FLAG_SPURT_END) != 0)
+		{
+			speaker.buffer.endSpurt();
+			pool.release(micPacket);
+		}
+		else if (speaker.decode(micPacket))
+		{
+			speaker.buffer.push(micPacket);
+		}
+		else
+		{
+			pool.release(micPacket);
+		}
+		wake();
+	}
+
+	/**
+	 * Stops mixing a speaker and throws away anything it had buffered. Only called from the network thread.
+	 *
+	 * @param decoder session id of the speaker
+	 */
+	public void removeSpeaker(int decoder)
+	{
+		Speaker speaker = sources.remove(decoder);
+		if (speaker != null)
+		{
+			updateSpeakers();
+			speaker.buffer.clear();
+		}
+	}
+
+	/**
+	 * Forgets every speaker that hasn't sent a frame for {@link #SPEAKER_TIMEOUT}. Only called from the network thread.
+	 *
+	 * @param now current time in milliseconds
+	 */
+	private void expireSpeakers(long now)
+	{
+		boolean removed = false;
+		for (IntMap.Values<Speaker> it = sources.values(); it.hasNext(); )
+		{
+			Speaker speaker = it.next();
+			if (now - speaker.lastFrameTime > SPEAKER_TIMEOUT)
+			{
+				it.remove();
+				speaker.buffer.clear();
+				removed = true;
+			}
+		}
+
+		if (removed)
+		{
+			updateSpeakers();
+		}
+	}
+
+	/**
+	 * Publishes the current speakers to the mixer
+	 */
+	private void updateSpeakers()
+	{
+		Speaker[] updated = new Speaker[sources.size];
+		int i = 0;
+		for (Speaker speaker : sources.values())
+		{
+			updated[i++] = speaker;
+		}
+		speakers = updated;
+	}
+
+	/**
+	 * Everything the mixer keeps for one speaker
+	 */
+	private static class Speaker
+	{
+		/**
+		 * Decoded frames waiting to be mixed
+		 */
+		final JitterBuffer buffer;
+
+		/**
+		 * Codec of {@link #decoder}
+		 */
+		VoiceCodec codec;
+
+		/**
+		 * Decoder for this speaker's stream
+		 */
+		VoiceDecoder decoder;
+
+		/**
+		 * Array the next frame is decoded into, swapped with the packet's encoded data so no frame needs a new array
+		 */
+		byte[] scratch = new byte[AudioConstants.FRAME_SIZE];
+
+		/**
+		 * Time the last frame from this speaker arrived, in milliseconds
+		 */
+		long lastFrameTime;
+
+		/**
+		 * Creates the state for a speaker that hasn't been heard yet
+		 *
+		 * @param pool pool the speaker's packets are borrowed from
+		 */
+		Speaker(ObjectPool<S2CMicPacket> pool)
+		{
+			buffer = new JitterBuffer(pool);
+		}
+
+		/**
+		 * Replaces the encoded audio in a packet with pcm
+		 *
+		 * @param packet packet to decode
+		 * @return false if the packet uses a codec this build doesn't understand
+		 */
+		boolean decode(S2CMicPacket packet)
+		{
+			if (codec == null || codec.getId() != packet.codec)
+			{
+				codec = VoiceCodecs.get(packet.codec);
+				if (codec == null)
+				{
+					return false;
+				}
+				decoder = codec.newDecoder();
+			}
+
+			byte[] pcm = scratch;
+			packet.length = decoder.decode(packet.data, packet.length, pcm);
+			scratch = packet.data;
+			packet.data = pcm;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.thatgamerblue.osrs.proxchat.client.audio;
+
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+
+/**
+ * Decides which mic frames contain speech, against a noise floor that adapts to the room
+ * <p>
+ * A frame is speech when it is louder than both the configured threshold and the noise floor by a margin, so steady
+ * background noise that creeps over the threshold stops holding the mic open once the floor has caught up with it.
+ * Speech is followed by a hangover, so the quiet ends of words and short pauses aren't chopped off.
+ */
+public class VoiceActivityDetector
+{
+	/**
+	 * How far above the noise floor a frame has to be to count as speech, in db
+	 */
+	private static final double SPEECH_MARGIN = 9D;
+
+	/**
+	 * Weight of a frame quieter than the noise floor, the floor drops quickly when it gets quieter
+	 */
+	private static final double FLOOR_FALL = 0.5D;
+
+	/**
+	 * Weight of a frame of noise louder than the floor, the floor rises over a fraction of a second
+	 */
+	private static final double FLOOR_RISE = 0.05D;
+
+	/**
+	 * Weight of a frame of speech, the floor only creeps up under speech so a sudden jump in noise is eventually caught
+	 */
+	private static final double FLOOR_RISE_SPEECH = 0.002D;
+
+	/**
+	 * Frames to keep transmitting for after the last frame of speech
+	 */
+	private static final int HANGOVER_FRAMES = 300 / AudioConstants.MS_PER_PACKET;
+
+	/**
+	 * Estimated level of the background noise, in db, NaN until the first frame
+	 */
+	private double noiseFloor = Double.NaN;
+
+	/**
+	 * Frames of hangover left
+	 */
+	private int hangover;
+
+	/**
+	 * Classifies a frame and updates the noise floor
+	 *
+	 * @param level     level of the frame in db, see {@link AudioUtil#calculateAudioLevel(byte[])}
+	 * @param threshold configured activation threshold in db, nothing quieter counts as speech
+	 * @return true if the frame should be transmitted, either because it is speech or during the hangover after speech
+	 */
+	public boolean isActive(double level, double threshold)
+	{
+		if (Double.isNaN(noiseFloor))
+		{
+			noiseFloor = level;
+		}
+
+		boolean speech = level > threshold && level > noiseFloor + SPEECH_MARGIN;
+
+		double weight;
+		if (level < noiseFloor)
+		{
+			weight = FLOOR_FALL;
+		}
+		else
+		{
+			weight = speech ? FLOOR_RISE_SPEECH : FLOOR_RISE;
+		}
+		noiseFloor += (level - noiseFloor) * weight;
+
+		if (speech)
+		{
+			hangover = HANGOVER_FRAMES;
+			return true;
+		}
+
+		if (hangover > 0)
+		{
+			hangover--;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Ends any hangover, e.g. when capture stops. The noise floor is kept.
+	 */
+	public void reset()
+	{
+		hangover = 0;
+	}
+}
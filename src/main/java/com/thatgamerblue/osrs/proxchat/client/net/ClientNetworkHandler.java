@@ -1,24 +1,34 @@
 package com.thatgamerblue.osrs.proxchat.client.net;
 
+import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.FrameworkMessage;
 import com.google.common.hash.Hashing;
 import com.thatgamerblue.osrs.proxchat.client.ProxChatClientPlugin;
-import com.thatgamerblue.osrs.proxchat.client.audio.SpeakerThread;
+import com.thatgamerblue.osrs.proxchat.client.audio.AudioUtil;
+import com.thatgamerblue.osrs.proxchat.client.audio.MicThread;
+import com.thatgamerblue.osrs.proxchat.client.audio.MixerThread;
 import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.PcmCodec;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodecs;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceEncoder;
 import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SAuth;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SMicPacket;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SUpdatePacket;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CAuthReq;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CCodec;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CKillDecoder;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicBundle;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUdpReq;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUpdateRate;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUpdateReq;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Random;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -27,7 +37,7 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
 import net.runelite.api.Perspective;
-import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.coords.WorldPoint;
 
 /**
  * Network handler for the client side.
@@ -72,12 +82,12 @@ public class ClientNetworkHandler extends NetworkHandler
 	private final Supplier<String> room;
 
 	/**
-	 * Holds all the SpeakerThread instances this handler controls
+	 * Mixes and plays every speaker's audio, started when the first mic packet arrives
 	 */
-	private final ConcurrentHashMap<UUID, SpeakerThread> speakers = new ConcurrentHashMap<>();
+	private volatile MixerThread mixer = null;
 
 	/**
-	 * Holds the speaker's muted state. Held here so we can drop packets early to not bother the speaker threads
+	 * Holds the speaker's muted state. Held here so we can drop packets early to not bother the mixer
 	 */
 	@Getter
 	private final AtomicBoolean speakerMuted = new AtomicBoolean(false);
@@ -88,6 +98,21 @@ public class ClientNetworkHandler extends NetworkHandler
 	@Getter
 	private final AtomicBoolean micTransmitting = new AtomicBoolean(false);
 
+	/**
+	 * Codec the server asked us to send voice with, PCM until it tells us otherwise
+	 */
+	private volatile VoiceCodec codec = VoiceCodecs.PCM;
+
+	/**
+	 * Codec {@link #encoder} was created for, only touched by the mic thread
+	 */
+	private VoiceCodec encoderCodec = null;
+
+	/**
+	 * Encoder for the voice stream of the current connection, only touched by the mic thread
+	 */
+	private VoiceEncoder encoder = null;
+
 	/**
 	 * Whether or not we should attempt a reconnect after we get disconnected
 	 */
@@ -99,10 +124,21 @@ public class ClientNetworkHandler extends NetworkHandler
 	private final AtomicBoolean connecting = new AtomicBoolean(false);
 
 	/**
-	 * Holds the last state we sent to the server
+	 * Holds the last state we sent to the server, as a full update. Updates are sent as deltas against it,
+	 * null means the next update has to be sent in full.
 	 */
 	private C2SUpdatePacket lastState = null;
 
+	/**
+	 * Game ticks between position updates, as asked for by the server
+	 */
+	private volatile int updateInterval = 1;
+
+	/**
+	 * Game ticks left until the next position update is due
+	 */
+	private int ticksUntilUpdate = 0;
+
 	/**
 	 * Maximum value for the backoff timer in seconds
 	 * <p>
@@ -117,6 +153,20 @@ public class ClientNetworkHandler extends NetworkHandler
 	 */
 	private static final int BACKOFF_TIMER_MIN = 30;
 
+	/**
+	 * How long to wait for the server to acknowledge our UDP registration before sticking with TCP, in milliseconds
+	 */
+	private static final int UDP_REGISTER_TIMEOUT = 3000;
+
+	/**
+	 * Holds received mic packets, so playing audio doesn't allocate anything per frame.
+	 * Packets are released by the mixer once played, or by whoever drops them.
+	 */
+	private static final ObjectPool<S2CMicPacket> micPacketPool = new ObjectPool<>(
+		256,
+		() -> new S2CMicPacket(0, PcmCodec.ID, 0, 0, new byte[AudioConstants.FRAME_SIZE], 0)
+	);
+
 	/**
 	 * Exponential backoff timer in seconds
 	 */
@@ -158,6 +208,20 @@ public class ClientNetworkHandler extends NetworkHandler
 		this.room = room;
 	}
 
+	/**
+	 * Registers the network types, then swaps in serializers that read mic packets, alone or bundled, into pooled buffers
+	 *
+	 * @param kryo kryo instance to register the types with
+	 */
+	@Override
+	protected void registerTypes(Kryo kryo)
+	{
+		super.registerTypes(kryo);
+		S2CMicPacket.PooledSerializer micSerializer = new S2CMicPacket.PooledSerializer(micPacketPool);
+		kryo.register(S2CMicPacket.class, micSerializer);
+		kryo.register(S2CMicBundle.class, new S2CMicBundle.Serializer(micSerializer));
+	}
+
 	/**
 	 * Initializes networking, should be called AFTER {@link NetworkHandler#initKryonet()}
 	 * Connects to the server
@@ -184,6 +248,11 @@ public class ClientNetworkHandler extends NetworkHandler
 			return;
 		}
 
+		// every connection negotiates its own codec and update rate, and starts its deltas over
+		codec = VoiceCodecs.PCM;
+		updateInterval = 1;
+		resetUpdates();
+
 		try
 		{
 			netClient.start();
@@ -212,7 +281,9 @@ public class ClientNetworkHandler extends NetworkHandler
 	@Override
 	protected void onConnected(Connection connection)
 	{
-
+		// the server knows nothing about us yet, deltas against the previous connection's state would be meaningless
+		resetUpdates();
+		wakeMic();
 	}
 
 	/**
@@ -224,7 +295,7 @@ public class ClientNetworkHandler extends NetworkHandler
 	@Override
 	protected void onMessageReceived(Connection connection, Object message)
 	{
-		if (!(message instanceof FrameworkMessage) && !(message instanceof S2CMicPacket))
+		if (!(message instanceof FrameworkMessage) && !(message instanceof S2CMicPacket) && !(message instanceof S2CMicBundle))
 		{
 			log.info("Recv message: {}", message);
 		}
@@ -240,49 +311,85 @@ public class ClientNetworkHandler extends NetworkHandler
 
 			byte[] fin = Hashing.sha256().hashBytes(pw).asBytes();
 
-			sendTCP(new C2SAuth(fin));
+			sendTCP(new C2SAuth(fin, VoiceCodecs.supportedMask()));
 		}
 		else if (message instanceof S2CUpdateReq)
 		{
-			sendUpdate(client.getGameState().getState());
+			// the server may not have our previous state, start the deltas over
+			sendFullUpdate(client.getGameState().getState());
 		}
-		else if (message instanceof S2CKillDecoder)
+		else if (message instanceof S2CUdpReq)
 		{
-			UUID uuid = ((S2CKillDecoder) message).uuid;
-			SpeakerThread speaker = speakers.get(uuid);
-			if (speaker != null)
+			int udpPort = ((S2CUdpReq) message).port;
+			// registering waits for a reply read by this thread, so it has to happen elsewhere
+			plugin.getExecutor().execute(() -> connectUdp(udpPort));
+		}
+		else if (message instanceof S2CCodec)
+		{
+			VoiceCodec codec = VoiceCodecs.get(((S2CCodec) message).codec);
+			if (codec != null)
 			{
-				speaker.destroy();
-				speakers.remove(uuid);
+				this.codec = codec;
+				log.info("Sending voice as {}", codec.getName());
 			}
 		}
-		else if (message instanceof S2CMicPacket)
+		else if (message instanceof S2CUpdateRate)
 		{
-			S2CMicPacket micPacket = (S2CMicPacket) message;
-
-			if (micPacket.distance < 0 || micPacket.distance > AudioConstants.MAX_DISTANCE)
+			updateInterval = Math.max(1, ((S2CUpdateRate) message).ticks);
+		}
+		else if (message instanceof S2CKillDecoder)
+		{
+			int decoder = ((S2CKillDecoder) message).decoder;
+			MixerThread mixer = this.mixer;
+			if (mixer != null)
 			{
-				// drop the packet, something's gone wrong
-				return;
+				mixer.removeSpeaker(decoder);
 			}
-
-			if (speakerMuted.get())
+		}
+		else if (message instanceof S2CMicBundle)
+		{
+			S2CMicBundle bundle = (S2CMicBundle) message;
+			for (int i = 0; i < bundle.count; i++)
 			{
-				// speaker is muted, don't bother the decoders
-				return;
+				playMicPacket(bundle.packets[i]);
 			}
+		}
+		else if (message instanceof S2CMicPacket)
+		{
+			playMicPacket((S2CMicPacket) message);
+		}
+	}
 
-			UUID decoderId = micPacket.decoder;
-			SpeakerThread speaker = speakers.get(decoderId);
-			if (speaker == null)
-			{
-				speaker = new SpeakerThread(decoderId, () -> plugin.getConfig().speakerVolume(), client::getGameState);
-				speakers.put(decoderId, speaker);
-				speaker.start();
-			}
+	/**
+	 * Hands a received frame to the mixer, starting it if this is the first frame since connecting
+	 *
+	 * @param micPacket frame to play, borrowed from {@link #micPacketPool}
+	 */
+	private void playMicPacket(S2CMicPacket micPacket)
+	{
+		if (micPacket.distance < 0 || micPacket.distance > AudioConstants.MAX_DISTANCE)
+		{
+			// drop the packet, something's gone wrong
+			micPacketPool.release(micPacket);
+			return;
+		}
 
-			speaker.push(micPacket);
+		if (speakerMuted.get())
+		{
+			// speaker is muted, don't bother the mixer
+			micPacketPool.release(micPacket);
+			return;
 		}
+
+		MixerThread mixer = this.mixer;
+		if (mixer == null)
+		{
+			mixer = new MixerThread(micPacketPool, () -> plugin.getConfig().speakerVolume(), client::getGameState);
+			this.mixer = mixer;
+			mixer.start();
+		}
+
+		mixer.push(micPacket);
 	}
 
 	/**
@@ -302,12 +409,89 @@ public class ClientNetworkHandler extends NetworkHandler
 	 */
 	public void sendTCP(Object object)
 	{
-		if (object instanceof C2SMicPacket)
+		netClient.sendTCP(object);
+	}
+
+	/**
+	 * Encodes a frame of microphone data with the negotiated codec and sends it.
+	 * Only called from the mic thread.
+	 *
+	 * @param pcm       pcm microphone data
+	 * @param sequence  sequence number of the frame
+	 * @param timestamp time the frame was captured, in milliseconds
+	 * @param flags     talk spurt markers, see {@link C2SMicPacket#flags}
+	 */
+	public void sendMic(byte[] pcm, int sequence, int timestamp, int flags)
+	{
+		micTransmitting.set(true);
+
+		VoiceCodec codec = this.codec;
+		if (encoderCodec != codec)
 		{
-			micTransmitting.set(true);
+			encoder = codec.newEncoder();
+			encoderCodec = codec;
 		}
 
-		netClient.sendTCP(object);
+		// lets the server pick the loudest speakers without decoding anything
+		int energy = (int) Math.round(AudioUtil.calculateAudioLevel(pcm)) + 127;
+
+		byte[] encoded = new byte[codec.getMaxEncodedSize(pcm.length)];
+		int length = encoder.encode(pcm, pcm.length, encoded);
+		sendMic(new C2SMicPacket(codec.getId(), encoded, length, sequence, timestamp, energy, flags));
+	}
+
+	/**
+	 * Tells the listeners the current talk spurt is over, so they can close their buffers straight away.
+	 * Only called from the mic thread.
+	 *
+	 * @param sequence  sequence number of the marker
+	 * @param timestamp time the spurt ended, in milliseconds
+	 */
+	public void sendMicEnd(int sequence, int timestamp)
+	{
+		micTransmitting.set(false);
+		sendMic(new C2SMicPacket(codec.getId(), new byte[0], 0, sequence, timestamp, 0, AudioConstants.FLAG_SPURT_END));
+	}
+
+	/**
+	 * Sends a mic packet over UDP if the server accepted our registration and over TCP otherwise
+	 *
+	 * @param packet packet to send
+	 */
+	private void sendMic(C2SMicPacket packet)
+	{
+		if (netClient.isUdpRegistered())
+		{
+			netClient.sendUDP(packet);
+		}
+		else
+		{
+			netClient.sendTCP(packet);
+		}
+	}
+
+	/**
+	 * Tries to move voice over to UDP. If the server can't be reached over UDP, e.g. because of a firewall, voice stays on TCP.
+	 *
+	 * @param udpPort UDP port the server is listening on
+	 */
+	private void connectUdp(int udpPort)
+	{
+		try
+		{
+			if (netClient.connectUDP(udpPort, UDP_REGISTER_TIMEOUT))
+			{
+				log.info("Sending voice over UDP");
+			}
+			else
+			{
+				log.info("Could not reach the voice server over UDP, sending voice over TCP");
+			}
+		}
+		catch (IOException | IllegalStateException ex)
+		{
+			log.warn("Failed to open UDP connection, sending voice over TCP", ex);
+		}
 	}
 
 	/**
@@ -318,6 +502,8 @@ public class ClientNetworkHandler extends NetworkHandler
 	@Override
 	protected void onDisconnected(Connection connection)
 	{
+		wakeMic();
+
 		if (!reconnect.get())
 		{
 			return;
@@ -327,21 +513,36 @@ public class ClientNetworkHandler extends NetworkHandler
 	}
 
 	/**
-	 * Sends an update about the client's current state to the server
+	 * Sends an update if one is due at the rate the server asked for. Called every game tick, which is as often as the
+	 * player's tile can change.
 	 *
 	 * @param gameState current game state
 	 */
-	public void sendUpdate(int gameState)
+	public synchronized void onGameTick(int gameState)
+	{
+		if (--ticksUntilUpdate > 0)
+		{
+			return;
+		}
+
+		ticksUntilUpdate = updateInterval;
+		sendUpdate(gameState);
+	}
+
+	/**
+	 * Sends an update about the client's current state to the server, if it changed since the last update
+	 *
+	 * @param gameState current game state
+	 */
+	public synchronized void sendUpdate(int gameState)
 	{
 		int x, y, plane, world;
 		if (client.getLocalPlayer() != null)
 		{
-			LocalPoint lp = client.getLocalPlayer().getLocalLocation();
-			int lX = lp.getX();
-			int lY = lp.getY();
-
-			x = lX + (client.getBaseX() * Perspective.LOCAL_TILE_SIZE);
-			y = lY + (client.getBaseY() * Perspective.LOCAL_TILE_SIZE);
+			// attenuation works per tile, so the position between tiles while walking isn't worth an update
+			WorldPoint wp = client.getLocalPlayer().getWorldLocation();
+			x = wp.getX() * Perspective.LOCAL_TILE_SIZE;
+			y = wp.getY() * Perspective.LOCAL_TILE_SIZE;
 			plane = client.getPlane();
 			world = client.getWorld();
 		}
@@ -355,17 +556,38 @@ public class ClientNetworkHandler extends NetworkHandler
 			return;
 		}
 
-		C2SUpdatePacket packet = new C2SUpdatePacket(x, y, plane, world, gameState, room.get());
-		if (packet.equals(lastState))
+		C2SUpdatePacket state = C2SUpdatePacket.full(x, y, plane, world, gameState, room.get());
+		C2SUpdatePacket packet = lastState == null ? state : state.deltaFrom(lastState);
+		if (packet == null)
 		{
 			return;
 		}
 
-		lastState = packet;
+		lastState = state;
 
 		sendTCP(packet);
 	}
 
+	/**
+	 * Sends the client's whole current state to the server, rather than what changed since the last update
+	 *
+	 * @param gameState current game state
+	 */
+	private synchronized void sendFullUpdate(int gameState)
+	{
+		lastState = null;
+		sendUpdate(gameState);
+	}
+
+	/**
+	 * Makes the next update a full one, for a connection that hasn't been sent any state yet
+	 */
+	private synchronized void resetUpdates()
+	{
+		lastState = null;
+		ticksUntilUpdate = 0;
+	}
+
 	/**
 	 * Disconnects the open server connection and destroys all audio players.
 	 * Reusable after calling {@link ClientNetworkHandler#connect()}
@@ -375,8 +597,24 @@ public class ClientNetworkHandler extends NetworkHandler
 	{
 		reconnect.set(false);
 		netClient.stop();
-		speakers.forEach((u, s) -> s.destroy());
-		speakers.clear();
+		MixerThread mixer = this.mixer;
+		if (mixer != null)
+		{
+			mixer.destroy();
+			this.mixer = null;
+		}
+	}
+
+	/**
+	 * Lets the mic thread know the connection state changed, it only captures while connected
+	 */
+	private void wakeMic()
+	{
+		MicThread micThread = plugin.getMicThread();
+		if (micThread != null)
+		{
+			micThread.wake();
+		}
 	}
 
 	/**
@@ -0,0 +1,42 @@
+package com.thatgamerblue.osrs.proxchat.common.audio;
+
+/**
+ * How loud a speaker is at a distance, shared by the client's mixer and the server's mixer so both sound the same
+ */
+public class Attenuation
+{
+	/**
+	 * Scales audio levels based off distance
+	 * Algorithm from https://stackoverflow.com/a/929107 because I'm too stupid to write it myself
+	 *
+	 * @param distance distance away from player in tiles * 128
+	 * @return audio multiplier
+	 */
+	public static float scale(int distance)
+	{
+		float minDist = (float) AudioConstants.MIN_DISTANCE;
+		float maxDist = (float) AudioConstants.MAX_DISTANCE;
+		float diff = maxDist - minDist;
+		float val = 1.0f - ((((distance - minDist) * 0.99f) / diff) + 0.01f);
+		return Math.max(0.0f, Math.min(val, 1.0f));
+	}
+
+	/**
+	 * Linear gain to apply to a speaker's samples
+	 *
+	 * @param distance    distance away from player in tiles * 128
+	 * @param volumeScale configured volume divided by its default, steepens or flattens the falloff
+	 * @return sample multiplier
+	 */
+	public static float gain(int distance, float volumeScale)
+	{
+		float scale = scale(distance);
+		if (scale <= 0f)
+		{
+			return 0f;
+		}
+
+		float volumeDb = (float) (10d * Math.log(scale)) * volumeScale;
+		return (float) Math.pow(10d, volumeDb / 20d);
+	}
+}
@@ -41,6 +41,16 @@ public class AudioConstants
 	 */
 	public static final int FRAME_SIZE = (SAMPLE_RATE / 1000) * Short.BYTES * MS_PER_PACKET;
 
+	/**
+	 * Flag on the first frame of a talk spurt
+	 */
+	public static final int FLAG_SPURT_START = 1;
+
+	/**
+	 * Flag on the empty frame sent after the last frame of a talk spurt
+	 */
+	public static final int FLAG_SPURT_END = 1 << 1;
+
 	/**
 	 * AudioFormat for reading from the mic
 	 */
@@ -0,0 +1,250 @@
+package com.thatgamerblue.osrs.proxchat.common.audio.codec;
+
+/**
+ * IMA ADPCM, stores each 16-bit sample as a 4-bit step relative to a prediction, a quarter of the size of pcm
+ * <p>
+ * Every frame starts with a 3 byte header holding the predictor and step index the frame was encoded from, so a frame can be
+ * decoded on its own after frames before it were lost, reordered or dropped by the jitter buffer.
+ */
+public class ImaAdpcmCodec implements VoiceCodec
+{
+	/**
+	 * Wire id of the codec
+	 */
+	public static final int ID = 1;
+
+	/**
+	 * Size of the predictor and step index at the start of every frame
+	 */
+	private static final int HEADER_SIZE = 3;
+
+	/**
+	 * Adjustment to the step index for each magnitude of encoded sample
+	 */
+	private static final int[] INDEX_TABLE = {
+		-1, -1, -1, -1, 2, 4, 6, 8
+	};
+
+	/**
+	 * Quantizer step sizes
+	 */
+	private static final int[] STEP_TABLE = {
+		7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45, 50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130,
+		143, 157, 173, 190, 209, 230, 253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282,
+		1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630,
+		9493, 10442, 11487, 12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+	};
+
+	/**
+	 * Identifies the codec on the wire
+	 *
+	 * @return {@link #ID}
+	 */
+	@Override
+	public int getId()
+	{
+		return ID;
+	}
+
+	/**
+	 * Human readable name of the codec
+	 *
+	 * @return codec name
+	 */
+	@Override
+	public String getName()
+	{
+		return "IMA ADPCM";
+	}
+
+	/**
+	 * A header, then one nibble per sample
+	 *
+	 * @param pcmLength size of the pcm frame in bytes
+	 * @return maximum encoded size in bytes
+	 */
+	@Override
+	public int getMaxEncodedSize(int pcmLength)
+	{
+		return HEADER_SIZE + (pcmLength / 2 + 1) / 2;
+	}
+
+	/**
+	 * Creates an encoder for a new stream of audio
+	 *
+	 * @return a new encoder
+	 */
+	@Override
+	public VoiceEncoder newEncoder()
+	{
+		return new Encoder();
+	}
+
+	/**
+	 * Creates a decoder for a new stream of audio
+	 *
+	 * @return a new decoder
+	 */
+	@Override
+	public VoiceDecoder newDecoder()
+	{
+		return new Decoder();
+	}
+
+	/**
+	 * State shared by the encoder and the decoder, both have to track the prediction identically
+	 */
+	private static class State
+	{
+		/**
+		 * Predicted value of the next sample
+		 */
+		int predictor;
+
+		/**
+		 * Index into {@link #STEP_TABLE} of the current step size
+		 */
+		int index;
+
+		/**
+		 * Moves the prediction by an encoded sample
+		 *
+		 * @param code 4-bit encoded sample
+		 */
+		void apply(int code)
+		{
+			int step = STEP_TABLE[index];
+			int delta = step >> 3;
+			if ((code & 4) != 0)
+			{
+				delta += step;
+			}
+			if ((code & 2) != 0)
+			{
+				delta += step >> 1;
+			}
+			if ((code & 1) != 0)
+			{
+				delta += step >> 2;
+			}
+
+			predictor += (code & 8) != 0 ? -delta : delta;
+			predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+			index = Math.max(0, Math.min(STEP_TABLE.length - 1, index + INDEX_TABLE[code & 7]));
+		}
+	}
+
+	/**
+	 * Encodes pcm into ADPCM, carrying the prediction over from one frame to the next
+	 */
+	private static class Encoder extends State implements VoiceEncoder
+	{
+		/**
+		 * Encodes one frame
+		 *
+		 * @param pcm       pcm audio
+		 * @param pcmLength number of bytes at the start of {@code pcm} to encode
+		 * @param out       where to write the encoded frame
+		 * @return number of bytes written to {@code out}
+		 */
+		@Override
+		public int encode(byte[] pcm, int pcmLength, byte[] out)
+		{
+			out[0] = (byte) predictor;
+			out[1] = (byte) (predictor >> 8);
+			out[2] = (byte) index;
+
+			int samples = pcmLength / 2;
+			for (int i = 0; i < samples; i++)
+			{
+				int sample = (short) ((pcm[i * 2 + 1] & 0xff) << 8 | pcm[i * 2] & 0xff);
+				int code = quantize(sample);
+				apply(code);
+
+				int pos = HEADER_SIZE + i / 2;
+				if ((i & 1) == 0)
+				{
+					out[pos] = (byte) code;
+				}
+				else
+				{
+					out[pos] |= (byte) (code << 4);
+				}
+			}
+
+			return HEADER_SIZE + (samples + 1) / 2;
+		}
+
+		/**
+		 * Finds the 4-bit code that moves the prediction closest to a sample
+		 *
+		 * @param sample sample to encode
+		 * @return 4-bit encoded sample
+		 */
+		private int quantize(int sample)
+		{
+			int step = STEP_TABLE[index];
+			int diff = sample - predictor;
+			int code = 0;
+			if (diff < 0)
+			{
+				code = 8;
+				diff = -diff;
+			}
+			if (diff >= step)
+			{
+				code |= 4;
+				diff -= step;
+			}
+			step >>= 1;
+			if (diff >= step)
+			{
+				code |= 2;
+				diff -= step;
+			}
+			step >>= 1;
+			if (diff >= step)
+			{
+				code |= 1;
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * Decodes ADPCM back into pcm
+	 */
+	private static class Decoder extends State implements VoiceDecoder
+	{
+		/**
+		 * Decodes one frame, resynchronizing with the encoder from the frame's header
+		 *
+		 * @param in       encoded frame
+		 * @param inLength number of bytes at the start of {@code in} that hold the frame
+		 * @param pcm      where to write the pcm audio, anything that doesn't fit is discarded
+		 * @return number of bytes written to {@code pcm}
+		 */
+		@Override
+		public int decode(byte[] in, int inLength, byte[] pcm)
+		{
+			if (inLength < HEADER_SIZE)
+			{
+				return 0;
+			}
+
+			predictor = (short) ((in[1] & 0xff) << 8 | in[0] & 0xff);
+			index = Math.min(in[2] & 0xff, STEP_TABLE.length - 1);
+
+			int samples = Math.min((inLength - HEADER_SIZE) * 2, pcm.length / 2);
+			for (int i = 0; i < samples; i++)
+			{
+				int packed = in[HEADER_SIZE + i / 2];
+				apply((i & 1) == 0 ? packed & 0xf : (packed >> 4) & 0xf);
+				pcm[i * 2] = (byte) predictor;
+				pcm[i * 2 + 1] = (byte) (predictor >> 8);
+			}
+
+			return samples * 2;
+		}
+	}
+}
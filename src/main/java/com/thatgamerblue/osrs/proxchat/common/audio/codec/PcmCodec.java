@@ -0,0 +1,110 @@
+package com.thatgamerblue.osrs.proxchat.common.audio.codec;
+
+/**
+ * Sends audio uncompressed, understood by every client
+ */
+public class PcmCodec implements VoiceCodec
+{
+	/**
+	 * Wire id of the codec
+	 */
+	public static final int ID = 0;
+
+	/**
+	 * Encoding and decoding are plain copies, so one instance can be shared by every stream
+	 */
+	private static final Copier COPIER = new Copier();
+
+	/**
+	 * Identifies the codec on the wire
+	 *
+	 * @return {@link #ID}
+	 */
+	@Override
+	public int getId()
+	{
+		return ID;
+	}
+
+	/**
+	 * Human readable name of the codec
+	 *
+	 * @return codec name
+	 */
+	@Override
+	public String getName()
+	{
+		return "PCM";
+	}
+
+	/**
+	 * Frames are sent as they are
+	 *
+	 * @param pcmLength size of the pcm frame in bytes
+	 * @return {@code pcmLength}
+	 */
+	@Override
+	public int getMaxEncodedSize(int pcmLength)
+	{
+		return pcmLength;
+	}
+
+	/**
+	 * Gets an encoder, which is shared as it has no state
+	 *
+	 * @return the shared copier
+	 */
+	@Override
+	public VoiceEncoder newEncoder()
+	{
+		return COPIER;
+	}
+
+	/**
+	 * Gets a decoder, which is shared as it has no state
+	 *
+	 * @return the shared copier
+	 */
+	@Override
+	public VoiceDecoder newDecoder()
+	{
+		return COPIER;
+	}
+
+	/**
+	 * Copies frames through unchanged
+	 */
+	private static class Copier implements VoiceEncoder, VoiceDecoder
+	{
+		/**
+		 * Copies a pcm frame
+		 *
+		 * @param pcm       pcm audio
+		 * @param pcmLength number of bytes at the start of {@code pcm} to encode
+		 * @param out       where to copy the frame to
+		 * @return {@code pcmLength}
+		 */
+		@Override
+		public int encode(byte[] pcm, int pcmLength, byte[] out)
+		{
+			System.arraycopy(pcm, 0, out, 0, pcmLength);
+			return pcmLength;
+		}
+
+		/**
+		 * Copies a pcm frame, truncated to whole samples that fit in the output
+		 *
+		 * @param in       encoded frame
+		 * @param inLength number of bytes at the start of {@code in} that hold the frame
+		 * @param pcm      where to copy the frame to
+		 * @return number of bytes copied
+		 */
+		@Override
+		public int decode(byte[] in, int inLength, byte[] pcm)
+		{
+			int length = Math.min(inLength, pcm.length) & ~1;
+			System.arraycopy(in, 0, pcm, 0, length);
+			return length;
+		}
+	}
+}
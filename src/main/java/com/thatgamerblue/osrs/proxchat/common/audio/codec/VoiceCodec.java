@@ -0,0 +1,48 @@
+package com.thatgamerblue.osrs.proxchat.common.audio.codec;
+
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+
+/**
+ * A way of compressing frames of {@link AudioConstants#MONO_FORMAT} audio before they are sent over the network
+ * <p>
+ * Codecs are stateless factories, the state of a stream lives in the encoders and decoders they create, so every connection
+ * gets its own encoder and every speaker gets its own decoder.
+ */
+public interface VoiceCodec
+{
+	/**
+	 * Identifies the codec on the wire, must be unique and below 32 so it fits in a bitmask of supported codecs
+	 *
+	 * @return codec id
+	 */
+	int getId();
+
+	/**
+	 * Human readable name of the codec
+	 *
+	 * @return codec name
+	 */
+	String getName();
+
+	/**
+	 * Largest number of bytes a frame of pcm audio can encode to
+	 *
+	 * @param pcmLength size of the pcm frame in bytes
+	 * @return maximum encoded size in bytes
+	 */
+	int getMaxEncodedSize(int pcmLength);
+
+	/**
+	 * Creates an encoder for a new stream of audio
+	 *
+	 * @return a new encoder
+	 */
+	VoiceEncoder newEncoder();
+
+	/**
+	 * Creates a decoder for a new stream of audio
+	 *
+	 * @return a new decoder
+	 */
+	VoiceDecoder newDecoder();
+}
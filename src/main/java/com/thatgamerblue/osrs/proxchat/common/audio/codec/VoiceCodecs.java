@@ -0,0 +1,95 @@
+package com.thatgamerblue.osrs.proxchat.common.audio.codec;
+
+/**
+ * Every codec this build understands, and how a connection settles on one
+ */
+public class VoiceCodecs
+{
+	/**
+	 * Uncompressed audio, always available as a fallback
+	 */
+	public static final VoiceCodec PCM = new PcmCodec();
+
+	/**
+	 * 4:1 compressed audio, the default
+	 */
+	public static final VoiceCodec IMA_ADPCM = new ImaAdpcmCodec();
+
+	/**
+	 * Supported codecs, most preferred first
+	 */
+	private static final VoiceCodec[] CODECS = {IMA_ADPCM, PCM};
+
+	/**
+	 * Codecs indexed by their wire id
+	 */
+	private static final VoiceCodec[] BY_ID = new VoiceCodec[32];
+
+	static
+	{
+		for (VoiceCodec codec : CODECS)
+		{
+			BY_ID[codec.getId()] = codec;
+		}
+	}
+
+	/**
+	 * Looks up a codec by its wire id
+	 *
+	 * @param id codec id
+	 * @return the codec, or null if this build doesn't understand it
+	 */
+	public static VoiceCodec get(int id)
+	{
+		if (id < 0 || id >= BY_ID.length)
+		{
+			return null;
+		}
+		return BY_ID[id];
+	}
+
+	/**
+	 * Bitmask of the ids of every codec this build understands, as offered to the server
+	 *
+	 * @return supported codecs, bit {@code n} is set if codec {@code n} is supported
+	 */
+	public static int supportedMask()
+	{
+		int mask = 0;
+		for (VoiceCodec codec : CODECS)
+		{
+			mask |= 1 << codec.getId();
+		}
+		return mask;
+	}
+
+	/**
+	 * Checks if a bitmask of codecs includes a codec
+	 *
+	 * @param mask bitmask of codec ids
+	 * @param id   codec id
+	 * @return true if the codec is in the mask
+	 */
+	public static boolean supports(int mask, int id)
+	{
+		return id >= 0 && id < 32 && (mask & 1 << id) != 0;
+	}
+
+	/**
+	 * Picks the codec a client should send its audio with
+	 *
+	 * @param offered bitmask of the codecs the client understands
+	 * @return the most preferred codec both sides understand, PCM if there is none
+	 */
+	public static VoiceCodec negotiate(int offered)
+	{
+		for (VoiceCodec codec : CODECS)
+		{
+			if (supports(offered, codec.getId()))
+			{
+				return codec;
+			}
+		}
+		return PCM;
+	}
+}
@@ -0,0 +1,17 @@
+package com.thatgamerblue.osrs.proxchat.common.audio.codec;
+
+/**
+ * Decodes a stream of encoded frames, not thread safe
+ */
+public interface VoiceDecoder
+{
+	/**
+	 * Decodes one frame into 16-bit little endian mono pcm audio
+	 *
+	 * @param in       encoded frame
+	 * @param inLength number of bytes at the start of {@code in} that hold the frame
+	 * @param pcm      where to write the pcm audio, anything that doesn't fit is discarded
+	 * @return number of bytes written to {@code pcm}
+	 */
+	int decode(byte[] in, int inLength, byte[] pcm);
+}
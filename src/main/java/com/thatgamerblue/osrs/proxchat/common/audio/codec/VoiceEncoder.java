@@ -0,0 +1,17 @@
+package com.thatgamerblue.osrs.proxchat.common.audio.codec;
+
+/**
+ * Encodes a stream of pcm frames, not thread safe
+ */
+public interface VoiceEncoder
+{
+	/**
+	 * Encodes one frame of 16-bit little endian mono pcm audio
+	 *
+	 * @param pcm       pcm audio
+	 * @param pcmLength number of bytes at the start of {@code pcm} to encode
+	 * @param out       where to write the encoded frame, must hold at least {@link VoiceCodec#getMaxEncodedSize(int)} bytes
+	 * @return number of bytes written to {@code out}
+	 */
+	int encode(byte[] pcm, int pcmLength, byte[] out);
+}
@@ -4,19 +4,22 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.EndPoint;
+import com.esotericsoftware.kryonet.KryoSerialization;
 import com.esotericsoftware.kryonet.Listener;
 import com.esotericsoftware.kryonet.Server;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SAuth;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SMicPacket;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.c2s.C2SUpdatePacket;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CAuthReq;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CCodec;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CKillDecoder;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicBundle;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUdpReq;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUpdateRate;
 import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CUpdateReq;
 import com.thatgamerblue.osrs.proxchat.common.serializers.ByteArySerializer;
-import com.thatgamerblue.osrs.proxchat.common.serializers.UUIDSerializer;
 import java.io.IOException;
-import java.util.UUID;
 
 /**
  * Superclass for both client and server networking classes.
@@ -24,6 +27,11 @@ import java.util.UUID;
  */
 public abstract class NetworkHandler
 {
+	/**
+	 * Size of the write and object buffers used by kryonet, and so the largest packet that can be sent
+	 */
+	public static final int BUFFER_SIZE = 16384;
+
 	/**
 	 * Holds the {@link com.esotericsoftware.kryonet.Client} instance of this NetworkHandler
 	 * Null on the server side.
@@ -58,37 +66,18 @@ public abstract class NetworkHandler
 	 */
 	public void initKryonet()
 	{
-		// grab the correct instance of kryo based off the operating mode
-		Kryo kryo;
 		switch (networkMode)
 		{
 			case CLIENT:
-				netClient = new Client(16384, 16384);
-				kryo = netClient.getKryo();
+				netClient = new Client(BUFFER_SIZE, BUFFER_SIZE, createSerialization());
 				break;
 			case SERVER:
-				netServer = new Server(16384, 16384);
-				kryo = netServer.getKryo();
+				netServer = createServer();
 				break;
 			default:
 				throw new IllegalStateException("Unexpected value: " + networkMode);
 		}
 
-		// register used types
-		kryo.register(byte[].class, new ByteArySerializer());
-		kryo.register(UUID.class, new UUIDSerializer());
-
-		// register C2S packets
-		kryo.register(C2SAuth.class, new C2SAuth.Serializer());
-		kryo.register(C2SMicPacket.class, new C2SMicPacket.Serializer());
-		kryo.register(C2SUpdatePacket.class, new C2SUpdatePacket.Serializer());
-
-		// register S2C packets
-		kryo.register(S2CAuthReq.class, new S2CAuthReq.Serializer());
-		kryo.register(S2CKillDecoder.class, new S2CKillDecoder.Serializer());
-		kryo.register(S2CMicPacket.class, new S2CMicPacket.Serializer());
-		kryo.register(S2CUpdateReq.class, new S2CUpdateReq.Serializer());
-
 		EndPoint endPoint;
 
 		switch (networkMode)
@@ -103,7 +92,7 @@ public abstract class NetworkHandler
 				throw new IllegalStateException("Unexpected value: " + networkMode);
 		}
 
-		endPoint.addListener(new Listener()
+		endPoint.addListener(wrapListener(new Listener()
 		{
 			@Override
 			public void connected(Connection connection)
@@ -122,7 +111,68 @@ public abstract class NetworkHandler
 			{
 				onMessageReceived(connection, o);
 			}
-		});
+		}));
+	}
+
+	/**
+	 * Wraps the listener that hands kryonet's events to this handler, e.g. to handle them on other threads.
+	 * By default events are handled on the network threads as they happen.
+	 *
+	 * @param listener listener calling {@link #onConnected}, {@link #onMessageReceived} and {@link #onDisconnected}
+	 * @return the listener to register with kryonet
+	 */
+	protected Listener wrapListener(Listener listener)
+	{
+		return listener;
+	}
+
+	/**
+	 * Registers every type sent over the network with a kryo instance.
+	 * Called once for each pooled kryo instance, so it must register the same types in the same order every time.
+	 *
+	 * @param kryo kryo instance to register the types with
+	 */
+	protected void registerTypes(Kryo kryo)
+	{
+		// register used types
+		kryo.register(byte[].class, new ByteArySerializer());
+
+		// register C2S packets
+		kryo.register(C2SAuth.class, new C2SAuth.Serializer());
+		kryo.register(C2SMicPacket.class, new C2SMicPacket.Serializer());
+		kryo.register(C2SUpdatePacket.class, new C2SUpdatePacket.Serializer());
+
+		// register S2C packets
+		kryo.register(S2CAuthReq.class, new S2CAuthReq.Serializer());
+		kryo.register(S2CKillDecoder.class, new S2CKillDecoder.Serializer());
+		kryo.register(S2CMicPacket.class, new S2CMicPacket.Serializer());
+		kryo.register(S2CUpdateReq.class, new S2CUpdateReq.Serializer());
+		kryo.register(S2CUdpReq.class, new S2CUdpReq.Serializer());
+		kryo.register(S2CCodec.class, new S2CCodec.Serializer());
+		kryo.register(S2CUpdateRate.class, new S2CUpdateRate.Serializer());
+		kryo.register(S2CMicBundle.class, new S2CMicBundle.Serializer(new S2CMicPacket.Serializer()));
+	}
+
+	/**
+	 * Creates the serialization used by kryonet, which lends each read and write a pooled kryo instance so reads and writes
+	 * from different threads don't wait on each other
+	 *
+	 * @return a new serialization, registered with {@link #registerTypes(Kryo)}
+	 */
+	protected KryoSerialization createSerialization()
+	{
+		return new KryoSerialization(this::registerTypes);
+	}
+
+	/**
+	 * Creates the {@link com.esotericsoftware.kryonet.Server} instance when operating as a server.
+	 * Can be overridden to customize the server, e.g. to give it a different type of connection.
+	 *
+	 * @return a new, unstarted server
+	 */
+	protected Server createServer()
+	{
+		return new Server(BUFFER_SIZE, BUFFER_SIZE, createSerialization());
 	}
 
 	/**
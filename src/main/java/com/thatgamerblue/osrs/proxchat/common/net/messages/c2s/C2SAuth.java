@@ -3,6 +3,7 @@ package com.thatgamerblue.osrs.proxchat.common.net.messages.c2s;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodecs;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -23,6 +24,11 @@ public class C2SAuth
 	 */
 	public byte[] password;
 
+	/**
+	 * Bitmask of the voice codecs the client understands, see {@link VoiceCodecs#supportedMask()}
+	 */
+	public int codecs;
+
 	/**
 	 * Serializes a C2SAuth packet to binary
 	 */
@@ -39,12 +45,13 @@ public class C2SAuth
 		public void write(Kryo kryo, Output output, C2SAuth packet)
 		{
 			kryo.getSerializer(byte[].class).write(kryo, output, packet.password);
+			output.writeInt(packet.codecs);
 		}
 
 		/**
 		 * Deserialize from binary
 		 *
-		 * @param kryo   unused
+		 * @param kryo   gets serializers for other types
 		 * @param input  input stream
 		 * @param aClass unused
 		 * @return deserialized packet
@@ -52,7 +59,8 @@ public class C2SAuth
 		@Override
 		public C2SAuth read(Kryo kryo, Input input, Class<C2SAuth> aClass)
 		{
-			return new C2SAuth((byte[]) kryo.getSerializer(byte[].class).read(kryo, input, byte[].class));
+			byte[] password = (byte[]) kryo.getSerializer(byte[].class).read(kryo, input, byte[].class);
+			return new C2SAuth(password, input.readInt());
 		}
 	}
 }
@@ -3,6 +3,10 @@ package com.thatgamerblue.osrs.proxchat.common.net.messages.c2s;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.serializers.ByteArySerializer;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -16,10 +20,57 @@ import lombok.ToString;
 public class C2SMicPacket
 {
 	/**
-	 * Microphone data
+	 * Id of the {@link VoiceCodec} {@link #data} is encoded with
+	 */
+	public int codec;
+
+	/**
+	 * Encoded microphone data
 	 */
 	public byte[] data;
 
+	/**
+	 * Number of bytes at the start of {@link #data} that hold microphone data.
+	 * Packets read with a {@link PooledSerializer} reuse their array, so it may be longer than the frame.
+	 */
+	public int length;
+
+	/**
+	 * Sequence number of the frame, incremented by one for every frame the client sends
+	 */
+	public int sequence;
+
+	/**
+	 * Time the frame was captured, in milliseconds, only meaningful relative to other frames from the same client
+	 */
+	public int timestamp;
+
+	/**
+	 * Loudness of the frame before encoding, the level in db plus 127, so 0 is silence and 127 is full scale.
+	 * Lets the server rank speakers without decoding their audio.
+	 */
+	public int energy;
+
+	/**
+	 * Talk spurt markers, {@link AudioConstants#FLAG_SPURT_START} and {@link AudioConstants#FLAG_SPURT_END}.
+	 * A spurt end marker holds no audio.
+	 */
+	public int flags;
+
+	/**
+	 * Creates a packet holding the whole of a microphone data array
+	 *
+	 * @param codec     id of the codec the data is encoded with
+	 * @param data      encoded microphone data
+	 * @param sequence  sequence number of the frame
+	 * @param timestamp time the frame was captured, in milliseconds
+	 * @param energy    loudness of the frame, see {@link #energy}
+	 */
+	public C2SMicPacket(int codec, byte[] data, int sequence, int timestamp, int energy)
+	{
+		this(codec, data, data.length, sequence, timestamp, energy, 0);
+	}
+
 	/**
 	 * Serializes a C2SMicPacket packet to binary
 	 */
@@ -35,7 +86,12 @@ public class C2SMicPacket
 		@Override
 		public void write(Kryo kryo, Output output, C2SMicPacket packet)
 		{
-			kryo.getSerializer(byte[].class).write(kryo, output, packet.data);
+			output.writeByte(packet.codec);
+			output.writeByte(packet.energy);
+			output.writeByte(packet.flags);
+			output.writeInt(packet.sequence);
+			output.writeInt(packet.timestamp);
+			ByteArySerializer.write(output, packet.data, packet.length);
 		}
 
 		/**
@@ -49,7 +105,64 @@ public class C2SMicPacket
 		@Override
 		public C2SMicPacket read(Kryo kryo, Input input, Class<C2SMicPacket> aClass)
 		{
-			return new C2SMicPacket((byte[]) kryo.getSerializer(byte[].class).read(kryo, input, byte[].class));
+			int codec = input.readByte() & 0xff;
+			int energy = input.readByte() & 0xff;
+			int flags = input.readByte() & 0xff;
+			int sequence = input.readInt();
+			int timestamp = input.readInt();
+			byte[] data = (byte[]) kryo.getSerializer(byte[].class).read(kryo, input, byte[].class);
+			return new C2SMicPacket(codec, data, data.length, sequence, timestamp, energy, flags);
+		}
+	}
+
+	/**
+	 * Serializes C2SMicPacket packets, borrowing packets from a pool when reading instead of allocating new ones.
+	 * Whoever handles the packet must {@link ObjectPool#release(Object)} it once they're done with the data.
+	 */
+	public static class PooledSerializer extends Serializer
+	{
+		/**
+		 * Pool to borrow packets from, the data array of each packet must be large enough to hold any valid frame
+		 */
+		private final ObjectPool<C2SMicPacket> pool;
+
+		/**
+		 * Creates a serializer reading into packets from the given pool
+		 *
+		 * @param pool pool to borrow packets from
+		 */
+		public PooledSerializer(ObjectPool<C2SMicPacket> pool)
+		{
+			this.pool = pool;
+		}
+
+		/**
+		 * Deserialize from binary into a pooled packet
+		 *
+		 * @param kryo   unused
+		 * @param input  input stream
+		 * @param aClass unused
+		 * @return deserialized packet, borrowed from the pool
+		 */
+		@Override
+		public C2SMicPacket read(Kryo kryo, Input input, Class<C2SMicPacket> aClass)
+		{
+			C2SMicPacket packet = pool.acquire();
+			try
+			{
+				packet.codec = input.readByte() & 0xff;
+				packet.energy = input.readByte() & 0xff;
+				packet.flags = input.readByte() & 0xff;
+				packet.sequence = input.readInt();
+				packet.timestamp = input.readInt();
+				packet.length = ByteArySerializer.readInto(input, packet.data);
+			}
+			catch (RuntimeException ex)
+			{
+				pool.release(packet);
+				throw ex;
+			}
+			return packet;
 		}
 	}
 }
@@ -3,6 +3,7 @@ package com.thatgamerblue.osrs.proxchat.common.net.messages.c2s;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import java.util.Objects;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
@@ -10,6 +11,11 @@ import lombok.ToString;
 
 /**
  * A packet sent from client to server containing player position and game state
+ * <p>
+ * Updates are sent over TCP, so each one is encoded as a delta against the previous update sent on the same connection.
+ * Only the fields marked in {@link #changed} are written, and the position is sent as a difference, which is usually a
+ * couple of bytes. A connection starts with a {@link #full} update, and the client sends another one whenever the server
+ * asks for an update.
  */
 @ToString
 @EqualsAndHashCode
@@ -18,11 +24,50 @@ import lombok.ToString;
 public class C2SUpdatePacket
 {
 	/**
-	 * Player x position
+	 * {@link #x} and {@link #y} are present
+	 */
+	public static final int POSITION = 1;
+
+	/**
+	 * {@link #x} and {@link #y} are absolute, rather than the difference from the previous update
+	 */
+	public static final int ABSOLUTE = 1 << 1;
+
+	/**
+	 * {@link #plane} is present
+	 */
+	public static final int PLANE = 1 << 2;
+
+	/**
+	 * {@link #world} is present
+	 */
+	public static final int WORLD = 1 << 3;
+
+	/**
+	 * {@link #gameState} is present
+	 */
+	public static final int GAME_STATE = 1 << 4;
+
+	/**
+	 * {@link #room} is present
+	 */
+	public static final int ROOM = 1 << 5;
+
+	/**
+	 * Every field is present and absolute
+	 */
+	public static final int FULL = POSITION | ABSOLUTE | PLANE | WORLD | GAME_STATE | ROOM;
+
+	/**
+	 * Which fields are present in this update
+	 */
+	public int changed;
+	/**
+	 * Player x position, or how far it moved since the previous update unless {@link #ABSOLUTE} is set
 	 */
 	public int x;
 	/**
-	 * Player y position
+	 * Player y position, or how far it moved since the previous update unless {@link #ABSOLUTE} is set
 	 */
 	public int y;
 	/**
@@ -42,6 +87,71 @@ public class C2SUpdatePacket
 	 */
 	public String room;
 
+	/**
+	 * Creates an update holding the whole state of the client
+	 *
+	 * @param x         player x position
+	 * @param y         player y position
+	 * @param plane     player plane
+	 * @param world     player world
+	 * @param gameState client game state
+	 * @param room      shared room name
+	 * @return the update
+	 */
+	public static C2SUpdatePacket full(int x, int y, int plane, int world, int gameState, String room)
+	{
+		return new C2SUpdatePacket(FULL, x, y, plane, world, gameState, room);
+	}
+
+	/**
+	 * Creates an update holding only what changed between two full updates
+	 *
+	 * @param previous full update sent before this one
+	 * @return the delta to send, or null if nothing changed
+	 */
+	public C2SUpdatePacket deltaFrom(C2SUpdatePacket previous)
+	{
+		C2SUpdatePacket delta = new C2SUpdatePacket();
+		if (x != previous.x || y != previous.y)
+		{
+			delta.changed |= POSITION;
+			delta.x = x - previous.x;
+			delta.y = y - previous.y;
+		}
+		if (plane != previous.plane)
+		{
+			delta.changed |= PLANE;
+			delta.plane = plane;
+		}
+		if (world != previous.world)
+		{
+			delta.changed |= WORLD;
+			delta.world = world;
+		}
+		if (gameState != previous.gameState)
+		{
+			delta.changed |= GAME_STATE;
+			delta.gameState = gameState;
+		}
+		if (!Objects.equals(room, previous.room))
+		{
+			delta.changed |= ROOM;
+			delta.room = room;
+		}
+		return delta.changed == 0 ? null : delta;
+	}
+
+	/**
+	 * Checks if fields are present in this update
+	 *
+	 * @param fields bitmask of fields to check
+	 * @return true if any of the fields are present
+	 */
+	public boolean has(int fields)
+	{
+		return (changed & fields) != 0;
+	}
+
 	/**
 	 * Serializes a C2SUpdatePacket to binary
 	 */
@@ -57,12 +167,29 @@ public class C2SUpdatePacket
 		@Override
 		public void write(Kryo kryo, Output output, C2SUpdatePacket packet)
 		{
-			output.writeInt(packet.x);
-			output.writeInt(packet.y);
-			output.writeInt(packet.plane);
-			output.writeInt(packet.world);
-			output.writeInt(packet.gameState);
-			output.writeString(packet.room);
+			// everything can be -1 while logged out, so zigzag encode it
+			output.writeByte(packet.changed);
+			if (packet.has(POSITION))
+			{
+				output.writeVarInt(packet.x, false);
+				output.writeVarInt(packet.y, false);
+			}
+			if (packet.has(PLANE))
+			{
+				output.writeVarInt(packet.plane, false);
+			}
+			if (packet.has(WORLD))
+			{
+				output.writeVarInt(packet.world, false);
+			}
+			if (packet.has(GAME_STATE))
+			{
+				output.writeVarInt(packet.gameState, false);
+			}
+			if (packet.has(ROOM))
+			{
+				output.writeString(packet.room);
+			}
 		}
 
 		/**
@@ -76,7 +203,30 @@ public class C2SUpdatePacket
 		@Override
 		public C2SUpdatePacket read(Kryo kryo, Input input, Class<C2SUpdatePacket> aClass)
 		{
-			return new C2SUpdatePacket(input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readString());
+			C2SUpdatePacket packet = new C2SUpdatePacket();
+			packet.changed = input.readByte() & 0xff;
+			if (packet.has(POSITION))
+			{
+				packet.x = input.readVarInt(false);
+				packet.y = input.readVarInt(false);
+			}
+			if (packet.has(PLANE))
+			{
+				packet.plane = input.readVarInt(false);
+			}
+			if (packet.has(WORLD))
+			{
+				packet.world = input.readVarInt(false);
+			}
+			if (packet.has(GAME_STATE))
+			{
+				packet.gameState = input.readVarInt(false);
+			}
+			if (packet.has(ROOM))
+			{
+				packet.room = input.readString();
+			}
+			return packet;
 		}
 	}
 }
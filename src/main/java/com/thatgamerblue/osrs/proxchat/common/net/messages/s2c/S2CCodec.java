@@ -0,0 +1,56 @@
+package com.thatgamerblue.osrs.proxchat.common.net.messages.s2c;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A packet sent from server to client after authenticating, telling it which codec to encode its voice with
+ */
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class S2CCodec
+{
+	/**
+	 * Id of the chosen {@link VoiceCodec}
+	 */
+	public int codec;
+
+	/**
+	 * Serializes a S2CCodec packet to binary
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<S2CCodec>
+	{
+		/**
+		 * Serialize to binary
+		 *
+		 * @param kryo   unused
+		 * @param output output stream
+		 * @param packet packet to write
+		 */
+		@Override
+		public void write(Kryo kryo, Output output, S2CCodec packet)
+		{
+			output.writeInt(packet.codec);
+		}
+
+		/**
+		 * Deserialize from binary
+		 *
+		 * @param kryo   unused
+		 * @param input  input stream
+		 * @param aClass unused
+		 * @return deserialized packet
+		 */
+		@Override
+		public S2CCodec read(Kryo kryo, Input input, Class<S2CCodec> aClass)
+		{
+			return new S2CCodec(input.readInt());
+		}
+	}
+}
@@ -3,7 +3,6 @@ package com.thatgamerblue.osrs.proxchat.common.net.messages.s2c;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import java.util.UUID;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -17,9 +16,9 @@ import lombok.ToString;
 public class S2CKillDecoder
 {
 	/**
-	 * The UUID of the decoder to kill
+	 * Session id of the decoder to kill
 	 */
-	public UUID uuid;
+	public int decoder;
 
 	/**
 	 * Serializes a S2CKillDecoder packet to binary
@@ -29,14 +28,14 @@ public class S2CKillDecoder
 		/**
 		 * Serialize to binary
 		 *
-		 * @param kryo   gets serializers for other types
+		 * @param kryo   unused
 		 * @param output output stream
 		 * @param packet packet to write
 		 */
 		@Override
 		public void write(Kryo kryo, Output output, S2CKillDecoder packet)
 		{
-			kryo.getSerializer(UUID.class).write(kryo, output, packet.uuid);
+			output.writeVarInt(packet.decoder, true);
 		}
 
 		/**
@@ -50,7 +49,7 @@ public class S2CKillDecoder
 		@Override
 		public S2CKillDecoder read(Kryo kryo, Input input, Class<S2CKillDecoder> aClass)
 		{
-			return new S2CKillDecoder((UUID) kryo.getSerializer(UUID.class).read(kryo, input, UUID.class));
+			return new S2CKillDecoder(input.readVarInt(true));
 		}
 	}
 }
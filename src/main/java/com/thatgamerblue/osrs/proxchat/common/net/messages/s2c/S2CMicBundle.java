@@ -0,0 +1,173 @@
+package com.thatgamerblue.osrs.proxchat.common.net.messages.s2c;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.net.NetworkHandler;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A packet sent from server to client holding every frame relayed to the client during one
+ * {@link AudioConstants#MS_PER_PACKET} tick, so several speakers talking at once cost one message instead of one each
+ * <p>
+ * The server builds a bundle by appending frames already serialized with {@link S2CMicPacket#writeFrame(Output, S2CMicPacket)},
+ * the client reads it back as {@link #packets}. A received bundle is reused for the next one read, so it must be handled before
+ * the endpoint reads another message.
+ */
+@ToString(exclude = "data")
+@NoArgsConstructor
+public class S2CMicBundle
+{
+	/**
+	 * Most frames a bundle can hold, as many of the smallest possible frame as fit in a {@link NetworkHandler#BUFFER_SIZE} message
+	 */
+	public static final int MAX_FRAMES = NetworkHandler.BUFFER_SIZE / S2CMicPacket.MIN_FRAME_SIZE;
+
+	/**
+	 * Number of frames in the bundle
+	 */
+	public int count;
+	/**
+	 * Frames serialized back to back, only used when sending
+	 */
+	public byte[] data;
+	/**
+	 * Number of bytes at the start of {@link #data} that hold frames
+	 */
+	public int length;
+	/**
+	 * Frames in the order they were bundled, only set when received. Only the first {@link #count} are part of the bundle, the
+	 * array is sized for the largest bundle read so far.
+	 */
+	public S2CMicPacket[] packets;
+
+	/**
+	 * Creates an empty bundle to append frames to
+	 *
+	 * @param capacity most bytes of serialized frames the bundle can hold
+	 */
+	public S2CMicBundle(int capacity)
+	{
+		this.data = new byte[capacity];
+	}
+
+	/**
+	 * Appends a serialized frame to the bundle, with the distance patched for the bundle's listener
+	 *
+	 * @param frame    frame serialized with {@link S2CMicPacket#writeFrame(Output, S2CMicPacket)}
+	 * @param size     number of bytes in the frame
+	 * @param distance distance of the speaker from the listener
+	 * @param limit    most bytes of frames to bundle, a frame larger than this still fits in an empty bundle
+	 * @return false if the frame doesn't fit, in which case the bundle should be sent and the frame appended to the next one
+	 */
+	public boolean append(byte[] frame, int size, int distance, int limit)
+	{
+		if (length + size > data.length || (count > 0 && length + size > limit))
+		{
+			return false;
+		}
+
+		System.arraycopy(frame, 0, data, length, size);
+		length += size;
+		count++;
+		S2CMicPacket.patchDistance(data, length, distance);
+		return true;
+	}
+
+	/**
+	 * Empties the bundle once it has been sent
+	 */
+	public void clear()
+	{
+		count = 0;
+		length = 0;
+	}
+
+	/**
+	 * Serializes a S2CMicBundle to binary
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<S2CMicBundle>
+	{
+		/**
+		 * Reads each frame in a bundle
+		 */
+		private final S2CMicPacket.Serializer frameSerializer;
+
+		/**
+		 * Bundle every read fills in, a kryo instance is only ever used by one thread at a time
+		 */
+		private final S2CMicBundle received = new S2CMicBundle();
+
+		/**
+		 * Creates a serializer reading frames with the given serializer
+		 *
+		 * @param frameSerializer serializer to read each frame with, e.g. a {@link S2CMicPacket.PooledSerializer}
+		 */
+		public Serializer(S2CMicPacket.Serializer frameSerializer)
+		{
+			this.frameSerializer = frameSerializer;
+		}
+
+		/**
+		 * Serialize to binary
+		 *
+		 * @param kryo   unused
+		 * @param output output stream
+		 * @param bundle bundle to write
+		 */
+		@Override
+		public void write(Kryo kryo, Output output, S2CMicBundle bundle)
+		{
+			output.writeVarInt(bundle.count, true);
+			output.writeBytes(bundle.data, 0, bundle.length);
+		}
+
+		/**
+		 * Deserialize from binary
+		 *
+		 * @param kryo   passed on to the frame serializer
+		 * @param input  input stream
+		 * @param aClass unused
+		 * @return deserialized bundle, its packets read by the frame serializer. The same instance is returned by every read.
+		 * @throws KryoException if the bundle claims to hold more than {@link #MAX_FRAMES} frames
+		 */
+		@Override
+		public S2CMicBundle read(Kryo kryo, Input input, Class<S2CMicBundle> aClass)
+		{
+			S2CMicBundle bundle = received;
+			int count = input.readVarInt(true);
+			if (count > MAX_FRAMES)
+			{
+				throw new KryoException("Bundle of " + count + " frames is larger than the most a message can hold, " + MAX_FRAMES);
+			}
+			if (bundle.packets == null || bundle.packets.length < count)
+			{
+				bundle.packets = new S2CMicPacket[count];
+			}
+
+			bundle.count = 0;
+			for (int i = 0; i < count; i++)
+			{
+				try
+				{
+					bundle.packets[i] = frameSerializer.read(kryo, input, S2CMicPacket.class);
+				}
+				catch (RuntimeException ex)
+				{
+					// nobody will handle the frames read so far, give them back before passing the error on
+					for (int j = 0; j < i; j++)
+					{
+						frameSerializer.release(bundle.packets[j]);
+						bundle.packets[j] = null;
+					}
+					throw ex;
+				}
+			}
+			bundle.count = count;
+			return bundle;
+		}
+	}
+}
@@ -3,7 +3,10 @@ package com.thatgamerblue.osrs.proxchat.common.net.messages.s2c;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import java.util.UUID;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.audio.codec.VoiceCodec;
+import com.thatgamerblue.osrs.proxchat.common.serializers.ByteArySerializer;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -17,18 +20,98 @@ import lombok.ToString;
 public class S2CMicPacket
 {
 	/**
-	 * UUID of the decoder to use
+	 * Fewest bytes a frame written by {@link #writeFrame(Output, S2CMicPacket)} can take, one for the decoder, one each for
+	 * the codec and flags, four each for the sequence, timestamp, data length and distance
 	 */
-	public UUID decoder;
+	public static final int MIN_FRAME_SIZE = 19;
+
+	/**
+	 * Session id of the stream, picks the decoder to use. Ids are only reused after the stream is ended with
+	 * {@link S2CKillDecoder}.
+	 */
+	public int decoder;
+	/**
+	 * Id of the {@link VoiceCodec} {@link #data} is encoded with
+	 */
+	public int codec;
+	/**
+	 * Talk spurt markers, {@link AudioConstants#FLAG_SPURT_START} and {@link AudioConstants#FLAG_SPURT_END}.
+	 * A spurt end marker holds no audio.
+	 */
+	public int flags;
+	/**
+	 * Sequence number of the frame, as sent by the transmitting player
+	 */
+	public int sequence;
+	/**
+	 * Time the frame was captured, in milliseconds on the transmitting player's clock
+	 */
+	public int timestamp;
 	/**
 	 * Audio data to decode
 	 */
 	public byte[] data;
+	/**
+	 * Number of bytes at the start of {@link #data} that hold audio data
+	 */
+	public int length;
 	/**
 	 * Distance away of the transmitting player
 	 */
 	public int distance;
 
+	/**
+	 * Creates a packet holding the whole of an audio data array
+	 *
+	 * @param decoder   session id of the stream
+	 * @param codec     id of the codec the data is encoded with
+	 * @param sequence  sequence number of the frame
+	 * @param timestamp time the frame was captured, in milliseconds
+	 * @param data      audio data to decode
+	 * @param distance  distance away of the transmitting player
+	 */
+	public S2CMicPacket(int decoder, int codec, int sequence, int timestamp, byte[] data, int distance)
+	{
+		this(decoder, codec, 0, sequence, timestamp, data, data.length, distance);
+	}
+
+	/**
+	 * Overwrites the distance of a packet serialized with {@link #writeFrame(Output, S2CMicPacket)}, so one frame can be reused
+	 * for every listener
+	 *
+	 * @param frame    array holding the serialized packet
+	 * @param end      index just past the end of the packet
+	 * @param distance new distance to write
+	 */
+	public static void patchDistance(byte[] frame, int end, int distance)
+	{
+		// the distance is written last, as a fixed size big endian int
+		frame[end - 4] = (byte) (distance >>> 24);
+		frame[end - 3] = (byte) (distance >>> 16);
+		frame[end - 2] = (byte) (distance >>> 8);
+		frame[end - 1] = (byte) distance;
+	}
+
+	/**
+	 * Writes the fields of a packet, without the class id kryo writes in front of a message
+	 * <p>
+	 * The distance must stay the last field written, see {@link #patchDistance(byte[], int, int)}
+	 *
+	 * @param output output stream
+	 * @param packet packet to write
+	 */
+	public static void writeFrame(Output output, S2CMicPacket packet)
+	{
+		// session ids are small, this is usually a single byte
+		output.writeVarInt(packet.decoder, true);
+		output.writeByte(packet.codec);
+		output.writeByte(packet.flags);
+		output.writeInt(packet.sequence);
+		output.writeInt(packet.timestamp);
+		ByteArySerializer.write(output, packet.data, packet.length);
+		output.writeInt(packet.distance);
+	}
+
 	/**
 	 * Serializes a S2CMicPacket to binary
 	 */
@@ -37,16 +120,14 @@ public class S2CMicPacket
 		/**
 		 * Serialize to binary
 		 *
-		 * @param kryo   gets serializers for other types
+		 * @param kryo   unused
 		 * @param output output stream
 		 * @param packet packet to write
 		 */
 		@Override
 		public void write(Kryo kryo, Output output, S2CMicPacket packet)
 		{
-			kryo.getSerializer(UUID.class).write(kryo, output, packet.decoder);
-			kryo.getSerializer(byte[].class).write(kryo, output, packet.data);
-			output.writeInt(packet.distance);
+			writeFrame(output, packet);
 		}
 
 		/**
@@ -60,9 +141,86 @@ public class S2CMicPacket
 		@Override
 		public S2CMicPacket read(Kryo kryo, Input input, Class<S2CMicPacket> aClass)
 		{
-			UUID uuid = (UUID) kryo.getSerializer(UUID.class).read(kryo, input, UUID.class);
+			int decoder = input.readVarInt(true);
+			int codec = input.readByte() & 0xff;
+			int flags = input.readByte() & 0xff;
+			int sequence = input.readInt();
+			int timestamp = input.readInt();
 			byte[] data = (byte[]) kryo.getSerializer(byte[].class).read(kryo, input, byte[].class);
-			return new S2CMicPacket(uuid, data, input.readInt());
+			return new S2CMicPacket(decoder, codec, flags, sequence, timestamp, data, data.length, input.readInt());
+		}
+
+		/**
+		 * Gives back a packet read by this serializer that won't be handled, e.g. because the message it was part of turned out
+		 * to be malformed. Packets from this serializer are garbage collected, so this does nothing.
+		 *
+		 * @param packet packet to give back
+		 */
+		public void release(S2CMicPacket packet)
+		{
+		}
+	}
+
+	/**
+	 * Serializes S2CMicPacket packets, borrowing packets from a pool when reading instead of allocating new ones.
+	 * Whoever handles the packet must {@link ObjectPool#release(Object)} it once they're done with the data.
+	 */
+	public static class PooledSerializer extends Serializer
+	{
+		/**
+		 * Pool to borrow packets from, the data array of each packet must be large enough to hold any valid frame
+		 */
+		private final ObjectPool<S2CMicPacket> pool;
+
+		/**
+		 * Creates a serializer reading into packets from the given pool
+		 *
+		 * @param pool pool to borrow packets from
+		 */
+		public PooledSerializer(ObjectPool<S2CMicPacket> pool)
+		{
+			this.pool = pool;
+		}
+
+		/**
+		 * Deserialize from binary into a pooled packet
+		 *
+		 * @param kryo   unused
+		 * @param input  input stream
+		 * @param aClass unused
+		 * @return deserialized packet, borrowed from the pool
+		 */
+		@Override
+		public S2CMicPacket read(Kryo kryo, Input input, Class<S2CMicPacket> aClass)
+		{
+			S2CMicPacket packet = pool.acquire();
+			try
+			{
+				packet.decoder = input.readVarInt(true);
+				packet.codec = input.readByte() & 0xff;
+				packet.flags = input.readByte() & 0xff;
+				packet.sequence = input.readInt();
+				packet.timestamp = input.readInt();
+				packet.length = ByteArySerializer.readInto(input, packet.data);
+				packet.distance = input.readInt();
+			}
+			catch (RuntimeException ex)
+			{
+				pool.release(packet);
+				throw ex;
+			}
+			return packet;
+		}
+
+		/**
+		 * Returns a packet read by this serializer to the pool
+		 *
+		 * @param packet packet to give back
+		 */
+		@Override
+		public void release(S2CMicPacket packet)
+		{
+			pool.release(packet);
 		}
 	}
 }
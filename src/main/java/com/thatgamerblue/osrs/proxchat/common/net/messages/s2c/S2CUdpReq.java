@@ -0,0 +1,55 @@
+package com.thatgamerblue.osrs.proxchat.common.net.messages.s2c;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A packet sent from server to client after authenticating, offering to carry voice over UDP instead of TCP
+ */
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class S2CUdpReq
+{
+	/**
+	 * UDP port the server is listening on
+	 */
+	public int port;
+
+	/**
+	 * Serializes a S2CUdpReq packet to binary
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<S2CUdpReq>
+	{
+		/**
+		 * Serialize to binary
+		 *
+		 * @param kryo   unused
+		 * @param output output stream
+		 * @param packet packet to write
+		 */
+		@Override
+		public void write(Kryo kryo, Output output, S2CUdpReq packet)
+		{
+			output.writeInt(packet.port);
+		}
+
+		/**
+		 * Deserialize from binary
+		 *
+		 * @param kryo   unused
+		 * @param input  input stream
+		 * @param aClass unused
+		 * @return deserialized packet
+		 */
+		@Override
+		public S2CUdpReq read(Kryo kryo, Input input, Class<S2CUdpReq> aClass)
+		{
+			return new S2CUdpReq(input.readInt());
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.thatgamerblue.osrs.proxchat.common.net.messages.s2c;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A packet sent from server to client after authenticating, telling it how often to send position updates
+ */
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class S2CUpdateRate
+{
+	/**
+	 * Game ticks between position updates, updates are still only sent when something changed
+	 */
+	public int ticks;
+
+	/**
+	 * Serializes a S2CUpdateRate packet to binary
+	 */
+	public static class Serializer extends com.esotericsoftware.kryo.Serializer<S2CUpdateRate>
+	{
+		/**
+		 * Serialize to binary
+		 *
+		 * @param kryo   unused
+		 * @param output output stream
+		 * @param packet packet to write
+		 */
+		@Override
+		public void write(Kryo kryo, Output output, S2CUpdateRate packet)
+		{
+			output.writeInt(packet.ticks);
+		}
+
+		/**
+		 * Deserialize from binary
+		 *
+		 * @param kryo   unused
+		 * @param input  input stream
+		 * @param aClass unused
+		 * @return deserialized packet
+		 */
+		@Override
+		public S2CUpdateRate read(Kryo kryo, Input input, Class<S2CUpdateRate> aClass)
+		{
+			return new S2CUpdateRate(input.readInt());
+		}
+	}
+}
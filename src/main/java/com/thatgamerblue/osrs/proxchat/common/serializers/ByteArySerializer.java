@@ -1,6 +1,7 @@
 package com.thatgamerblue.osrs.proxchat.common.serializers;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -26,8 +27,39 @@ public class ByteArySerializer extends Serializer<byte[]>
 	@Override
 	public void write(Kryo kryo, Output output, byte[] bytes)
 	{
-		output.writeInt(bytes.length);
-		output.write(bytes);
+		write(output, bytes, bytes.length);
+	}
+
+	/**
+	 * Serializes the start of a byte array into the output, in the same format as {@link #write(Kryo, Output, byte[])}
+	 *
+	 * @param output output stream to write into
+	 * @param bytes  byte array to write
+	 * @param length number of bytes from the start of the array to write
+	 */
+	public static void write(Output output, byte[] bytes, int length)
+	{
+		output.writeInt(length);
+		output.write(bytes, 0, length);
+	}
+
+	/**
+	 * Deserializes a byte array into an existing array instead of allocating a new one
+	 *
+	 * @param input input stream to read from
+	 * @param dest  array to read into, must be large enough to hold the whole byte array
+	 * @return number of bytes read into dest
+	 * @throws KryoException if the byte array does not fit into dest
+	 */
+	public static int readInto(Input input, byte[] dest)
+	{
+		int len = input.readInt();
+		if (len < 0 || len > dest.length)
+		{
+			throw new KryoException("Byte array of length " + len + " does not fit into buffer of length " + dest.length);
+		}
+		input.readBytes(dest, 0, len);
+		return len;
 	}
 
 	/**
@@ -0,0 +1,62 @@
+package com.thatgamerblue.osrs.proxchat.common.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of reusable objects, used to keep per-frame allocations off the audio paths
+ * <p>
+ * Objects are created on demand when the pool is empty, and dropped for the GC to collect when it is full.
+ * Borrowing and returning objects never allocates once the pool has warmed up.
+ *
+ * @param <T> type of object held in the pool
+ */
+public class ObjectPool<T>
+{
+	/**
+	 * Holds the objects waiting to be borrowed
+	 */
+	private final ArrayBlockingQueue<T> free;
+
+	/**
+	 * Creates new objects when the pool is empty
+	 */
+	private final Supplier<T> factory;
+
+	/**
+	 * Creates a new, empty pool
+	 *
+	 * @param capacity maximum number of idle objects to hold on to
+	 * @param factory  creates new objects when the pool is empty
+	 */
+	public ObjectPool(int capacity, Supplier<T> factory)
+	{
+		this.free = new ArrayBlockingQueue<>(capacity);
+		this.factory = factory;
+	}
+
+	/**
+	 * Borrows an object from the pool, creating a new one if none are available.
+	 * The object should be given back with {@link #release(Object)} once the caller is done with it.
+	 *
+	 * @return an object not in use by anybody else
+	 */
+	public T acquire()
+	{
+		T obj = free.poll();
+		return obj != null ? obj : factory.get();
+	}
+
+	/**
+	 * Gives an object back to the pool. The caller must not touch the object after releasing it.
+	 *
+	 * @param obj object to return, ignored if null
+	 */
+	public void release(T obj)
+	{
+		if (obj != null)
+		{
+			free.offer(obj);
+		}
+	}
+}
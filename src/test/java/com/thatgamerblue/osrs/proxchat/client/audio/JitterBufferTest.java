@@ -0,0 +1,257 @@
+package com.thatgamerblue.osrs.proxchat.client.audio;
+
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.net.messages.s2c.S2CMicPacket;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JitterBuffer}
+ */
+public class JitterBufferTest
+{
+	/**
+	 * Most frames held back before playout starts, see {@link JitterBuffer}
+	 */
+	private static final int MAX_DEPTH = 200 / AudioConstants.MS_PER_PACKET;
+
+	/**
+	 * Pool the test frames are borrowed from
+	 */
+	private ObjectPool<S2CMicPacket> pool;
+
+	/**
+	 * Buffer under test
+	 */
+	private JitterBuffer buffer;
+
+	/**
+	 * Creates an empty buffer before each test
+	 */
+	@Before
+	public void setUp()
+	{
+		pool = new ObjectPool<>(16, S2CMicPacket::new);
+		buffer = new JitterBuffer(pool);
+	}
+
+	/**
+	 * Frames that arrive out of order before playout starts are played in sequence order
+	 */
+	@Test
+	public void testReorderedFramesPlayInOrder()
+	{
+		push(0);
+		push(2);
+		push(1);
+
+		assertEquals(0, buffer.pop().sequence);
+		assertTrue(buffer.isPlaying());
+		assertEquals(1, buffer.pop().sequence);
+		assertEquals(2, buffer.pop().sequence);
+		assertEquals(0, buffer.getLateFrames());
+		assertEquals(0, buffer.getLostFrames());
+	}
+
+	/**
+	 * A frame missing when its turn comes is counted as lost without stopping playout
+	 */
+	@Test
+	public void testMissingFrameIsLost()
+	{
+		push(0);
+		push(2);
+
+		assertEquals(0, buffer.pop().sequence);
+		assertNull(buffer.pop());
+		assertTrue(buffer.isPlaying());
+		assertEquals(1, buffer.getLostFrames());
+		assertEquals(2, buffer.pop().sequence);
+	}
+
+	/**
+	 * A frame arriving after its turn to play is thrown away and given back to the pool
+	 */
+	@Test
+	public void testLateFrameIsDropped()
+	{
+		push(0);
+		push(1);
+		push(2);
+		assertEquals(0, buffer.pop().sequence);
+
+		S2CMicPacket late = push(0);
+		assertEquals(1, buffer.getLateFrames());
+		assertSame(late, pool.acquire());
+		assertEquals(1, buffer.pop().sequence);
+	}
+
+	/**
+	 * A frame a whole buffer behind the newest one is dropped before playout starts, rather than taking the newest one's slot
+	 */
+	@Test
+	public void testFrameThatWouldAliasIsDropped()
+	{
+		int capacity = 1000 / AudioConstants.MS_PER_PACKET;
+		push(capacity);
+		push(0);
+
+		assertEquals(1, buffer.getLateFrames());
+		buffer.endSpurt();
+		assertEquals(capacity, buffer.pop().sequence);
+	}
+
+	/**
+	 * A spurt shorter than the prefetch depth is held back until the sender says it's over, then played out
+	 */
+	@Test
+	public void testShortSpurtPlaysOnceEnded()
+	{
+		push(0);
+		assertNull(buffer.pop());
+		assertFalse(buffer.isPlaying());
+
+		buffer.endSpurt();
+		assertEquals(0, buffer.pop().sequence);
+		assertNull(buffer.pop());
+		assertFalse(buffer.isPlaying());
+		assertEquals(0, buffer.getLostFrames());
+	}
+
+	/**
+	 * The target depth grows with the measured jitter, is capped at the maximum depth, and shrinks back once arrivals steady
+	 */
+	@Test
+	public void testTargetDepthFollowsJitter()
+	{
+		assertEquals(2, buffer.getTargetDepth());
+
+		// every other frame 40ms late converges on 40ms of jitter, three times that is 6 frames plus one
+		int sequence = 0;
+		for (; sequence < 100; sequence++)
+		{
+			push(sequence, sequence % 2 == 0 ? 0 : 40, false);
+			pool.release(buffer.pop());
+		}
+		assertEquals(7, buffer.getTargetDepth());
+
+		for (; sequence < 200; sequence++)
+		{
+			push(sequence, sequence % 2 == 0 ? 0 : 200, false);
+			pool.release(buffer.pop());
+		}
+		assertEquals(MAX_DEPTH, buffer.getTargetDepth());
+
+		for (; sequence < 300; sequence++)
+		{
+			push(sequence, 0, false);
+			pool.release(buffer.pop());
+		}
+		assertEquals(2, buffer.getTargetDepth());
+	}
+
+	/**
+	 * Once the buffer runs past its target by more than the margin, quiet frames are skipped to catch up
+	 */
+	@Test
+	public void testCatchUpSkipsQuietFrames()
+	{
+		for (int sequence = 0; sequence < 8; sequence++)
+		{
+			push(sequence, 0, false);
+		}
+
+		// target 2 plus a margin of 2 leaves 4 of the 8 frames, counting the one played
+		assertEquals(4, buffer.pop().sequence);
+		assertEquals(4, buffer.getDroppedFrames());
+		assertEquals(3, drain());
+	}
+
+	/**
+	 * Frames with speech in them aren't skipped while the buffer is within its maximum depth
+	 */
+	@Test
+	public void testCatchUpKeepsLoudFrames()
+	{
+		for (int sequence = 0; sequence < 8; sequence++)
+		{
+			push(sequence, 0, true);
+		}
+
+		assertEquals(0, buffer.pop().sequence);
+		assertEquals(0, buffer.getDroppedFrames());
+		assertEquals(7, drain());
+	}
+
+	/**
+	 * Past the maximum depth frames are skipped however loud they are, so latency stays bounded
+	 */
+	@Test
+	public void testMaxDepthForcesDrops()
+	{
+		for (int sequence = 0; sequence < 15; sequence++)
+		{
+			push(sequence, 0, true);
+		}
+
+		assertEquals(15 - MAX_DEPTH, buffer.pop().sequence);
+		assertEquals(15 - MAX_DEPTH, buffer.getDroppedFrames());
+		assertEquals(MAX_DEPTH - 1, drain());
+	}
+
+	/**
+	 * Plays out everything buffered
+	 *
+	 * @return number of frames played
+	 */
+	private int drain()
+	{
+		int frames = 0;
+		S2CMicPacket packet;
+		while ((packet = buffer.pop()) != null)
+		{
+			pool.release(packet);
+			frames++;
+		}
+		return frames;
+	}
+
+	/**
+	 * Pushes a silent frame that arrives exactly when it was captured, so the jitter stays at zero
+	 *
+	 * @param sequence sequence number of the frame
+	 * @return the frame pushed
+	 */
+	private S2CMicPacket push(int sequence)
+	{
+		return push(sequence, 0, false);
+	}
+
+	/**
+	 * Pushes a frame
+	 *
+	 * @param sequence sequence number of the frame
+	 * @param delay    milliseconds between the frame being captured and arriving
+	 * @param loud     does the frame hold speech rather than silence
+	 * @return the frame pushed
+	 */
+	private S2CMicPacket push(int sequence, int delay, boolean loud)
+	{
+		int timestamp = sequence * AudioConstants.MS_PER_PACKET;
+		byte[] data = new byte[AudioConstants.FRAME_SIZE];
+		if (loud)
+		{
+			Arrays.fill(data, (byte) 0x40);
+		}
+		S2CMicPacket packet = new S2CMicPacket(1, 0, sequence, timestamp, data, 0);
+		buffer.push(packet, timestamp + delay);
+		return packet;
+	}
+}
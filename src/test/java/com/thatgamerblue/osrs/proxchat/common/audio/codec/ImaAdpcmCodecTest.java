@@ -0,0 +1,104 @@
+package com.thatgamerblue.osrs.proxchat.common.audio.codec;
+
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ImaAdpcmCodec}
+ */
+public class ImaAdpcmCodecTest
+{
+	/**
+	 * Lowest signal to noise ratio accepted for the test signal, in db. IMA ADPCM manages around 38 db on it.
+	 */
+	private static final double MIN_SNR = 35D;
+
+	/**
+	 * Number of frames of the test signal to encode
+	 */
+	private static final int FRAMES = 50;
+
+	/**
+	 * A frame comes back the same length it went in, and encodes to the size the codec promised
+	 */
+	@Test
+	public void testFrameSizes()
+	{
+		ImaAdpcmCodec codec = new ImaAdpcmCodec();
+		byte[] pcm = signal(0);
+		byte[] encoded = new byte[codec.getMaxEncodedSize(pcm.length)];
+		byte[] decoded = new byte[AudioConstants.FRAME_SIZE];
+
+		int encodedLength = codec.newEncoder().encode(pcm, pcm.length, encoded);
+		assertEquals(codec.getMaxEncodedSize(pcm.length), encodedLength);
+		assertEquals(pcm.length, codec.newDecoder().decode(encoded, encodedLength, decoded));
+	}
+
+	/**
+	 * A stream of frames round trips with little enough noise added to sound like the original
+	 */
+	@Test
+	public void testRoundTripSignalToNoise()
+	{
+		ImaAdpcmCodec codec = new ImaAdpcmCodec();
+		VoiceEncoder encoder = codec.newEncoder();
+		VoiceDecoder decoder = codec.newDecoder();
+		byte[] encoded = new byte[codec.getMaxEncodedSize(AudioConstants.FRAME_SIZE)];
+		byte[] decoded = new byte[AudioConstants.FRAME_SIZE];
+
+		double signal = 0;
+		double noise = 0;
+		for (int frame = 0; frame < FRAMES; frame++)
+		{
+			byte[] pcm = signal(frame);
+			int length = decoder.decode(encoded, encoder.encode(pcm, pcm.length, encoded), decoded);
+			for (int i = 0; i < length; i += 2)
+			{
+				int original = sample(pcm, i);
+				int error = sample(decoded, i) - original;
+				signal += (double) original * original;
+				noise += (double) error * error;
+			}
+		}
+
+		double snr = 10D * Math.log10(signal / noise);
+		assertTrue("snr was " + snr + " db", snr > MIN_SNR);
+	}
+
+	/**
+	 * Makes one frame of a test signal, a mix of tones across the voice band
+	 *
+	 * @param frame index of the frame, so consecutive frames join up
+	 * @return the frame as 16 bit little endian pcm
+	 */
+	private static byte[] signal(int frame)
+	{
+		byte[] pcm = new byte[AudioConstants.FRAME_SIZE];
+		int samples = pcm.length / 2;
+		for (int i = 0; i < samples; i++)
+		{
+			double t = (double) (frame * samples + i) / AudioConstants.SAMPLE_RATE;
+			double value = 6000 * Math.sin(2 * Math.PI * 200 * t)
+				+ 3000 * Math.sin(2 * Math.PI * 450 * t)
+				+ 1000 * Math.sin(2 * Math.PI * 900 * t);
+			short sample = (short) value;
+			pcm[i * 2] = (byte) sample;
+			pcm[i * 2 + 1] = (byte) (sample >> 8);
+		}
+		return pcm;
+	}
+
+	/**
+	 * Reads a sample out of 16 bit little endian pcm
+	 *
+	 * @param pcm    pcm to read from
+	 * @param offset byte offset of the sample
+	 * @return the sample
+	 */
+	private static int sample(byte[] pcm, int offset)
+	{
+		return (short) ((pcm[offset + 1] & 0xff) << 8 | pcm[offset] & 0xff);
+	}
+}
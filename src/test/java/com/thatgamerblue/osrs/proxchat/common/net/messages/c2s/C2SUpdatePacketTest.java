@@ -0,0 +1,95 @@
+package com.thatgamerblue.osrs.proxchat.common.net.messages.c2s;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests for {@link C2SUpdatePacket}
+ */
+public class C2SUpdatePacketTest
+{
+	/**
+	 * Update every delta in these tests is taken from
+	 */
+	private static final C2SUpdatePacket PREVIOUS = C2SUpdatePacket.full(3200, 3200, 0, 301, 30, "room");
+
+	/**
+	 * Nothing is sent if nothing changed
+	 */
+	@Test
+	public void testUnchangedHasNoDelta()
+	{
+		assertNull(C2SUpdatePacket.full(3200, 3200, 0, 301, 30, "room").deltaFrom(PREVIOUS));
+	}
+
+	/**
+	 * A move only carries how far the player moved
+	 */
+	@Test
+	public void testMoveDelta()
+	{
+		C2SUpdatePacket delta = C2SUpdatePacket.full(3199, 3202, 0, 301, 30, "room").deltaFrom(PREVIOUS);
+
+		assertEquals(C2SUpdatePacket.POSITION, delta.changed);
+		assertFalse(delta.has(C2SUpdatePacket.ABSOLUTE));
+		assertEquals(-1, delta.x);
+		assertEquals(2, delta.y);
+	}
+
+	/**
+	 * Every changed field is marked, and the rest are left out
+	 */
+	@Test
+	public void testFieldDelta()
+	{
+		C2SUpdatePacket delta = C2SUpdatePacket.full(3200, 3200, 1, 302, 30, null).deltaFrom(PREVIOUS);
+
+		assertEquals(C2SUpdatePacket.PLANE | C2SUpdatePacket.WORLD | C2SUpdatePacket.ROOM, delta.changed);
+		assertEquals(1, delta.plane);
+		assertEquals(302, delta.world);
+		assertNull(delta.room);
+	}
+
+	/**
+	 * A full update survives serialization, including the -1s sent while logged out
+	 */
+	@Test
+	public void testFullRoundTrip()
+	{
+		C2SUpdatePacket packet = C2SUpdatePacket.full(-1, -1, -1, -1, 10, "");
+		assertEquals(packet, roundTrip(packet));
+	}
+
+	/**
+	 * A delta survives serialization, and is only a few bytes for a small move
+	 */
+	@Test
+	public void testDeltaRoundTrip()
+	{
+		C2SUpdatePacket delta = C2SUpdatePacket.full(3199, 3202, 0, 301, 30, "room").deltaFrom(PREVIOUS);
+
+		Output output = new Output(64);
+		new C2SUpdatePacket.Serializer().write(null, output, delta);
+		assertTrue(output.position() <= 3);
+		assertEquals(delta, roundTrip(delta));
+	}
+
+	/**
+	 * Serializes a packet and reads it back
+	 *
+	 * @param packet packet to serialize
+	 * @return the packet read back
+	 */
+	private static C2SUpdatePacket roundTrip(C2SUpdatePacket packet)
+	{
+		C2SUpdatePacket.Serializer serializer = new C2SUpdatePacket.Serializer();
+		Output output = new Output(64);
+		serializer.write(null, output, packet);
+		return serializer.read(null, new Input(output.toBytes()), C2SUpdatePacket.class);
+	}
+}
@@ -0,0 +1,230 @@
+package com.thatgamerblue.osrs.proxchat.common.net.messages.s2c;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.thatgamerblue.osrs.proxchat.common.audio.AudioConstants;
+import com.thatgamerblue.osrs.proxchat.common.util.ObjectPool;
+import java.util.Arrays;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link S2CMicBundle}
+ */
+public class S2CMicBundleTest
+{
+	/**
+	 * Bytes of audio in each test frame
+	 */
+	private static final int DATA_SIZE = 40;
+
+	/**
+	 * Pool the serializer reads frames into
+	 */
+	private ObjectPool<S2CMicPacket> pool;
+
+	/**
+	 * Number of packets the pool has had to create
+	 */
+	private int created;
+
+	/**
+	 * Serializer under test, reading frames into pooled packets as the client does
+	 */
+	private S2CMicBundle.Serializer serializer;
+
+	/**
+	 * Creates the serializer before each test
+	 */
+	@Before
+	public void setUp()
+	{
+		created = 0;
+		pool = new ObjectPool<>(16, () ->
+		{
+			created++;
+			return new S2CMicPacket(0, 0, 0, 0, new byte[AudioConstants.FRAME_SIZE], 0);
+		});
+		serializer = new S2CMicBundle.Serializer(new S2CMicPacket.PooledSerializer(pool));
+	}
+
+	/**
+	 * Frames come back in the order they were bundled, each with the distance patched in for the listener
+	 */
+	@Test
+	public void testAppendAndRead()
+	{
+		S2CMicBundle bundle = new S2CMicBundle(1024);
+		Output frame = frame(1, 10);
+		assertTrue(bundle.append(frame.getBuffer(), frame.position(), 300, 1024));
+		frame = frame(2, 11);
+		assertTrue(bundle.append(frame.getBuffer(), frame.position(), 400, 1024));
+
+		S2CMicBundle read = roundTrip(bundle);
+		assertEquals(2, read.count);
+		assertPacket(read.packets[0], 1, 10, 300);
+		assertPacket(read.packets[1], 2, 11, 400);
+	}
+
+	/**
+	 * The same serialized frame can be bundled for several listeners, each getting its own distance
+	 */
+	@Test
+	public void testDistancePatchedPerListener()
+	{
+		Output frame = frame(1, 10);
+		S2CMicBundle near = new S2CMicBundle(1024);
+		S2CMicBundle far = new S2CMicBundle(1024);
+		near.append(frame.getBuffer(), frame.position(), 100, 1024);
+		far.append(frame.getBuffer(), frame.position(), 1500, 1024);
+
+		assertEquals(100, roundTrip(near).packets[0].distance);
+		assertEquals(1500, roundTrip(far).packets[0].distance);
+	}
+
+	/**
+	 * A frame that would take the bundle past its limit is turned away, unless the bundle is empty
+	 */
+	@Test
+	public void testLimit()
+	{
+		Output frame = frame(1, 10);
+		int limit = frame.position() + 1;
+		S2CMicBundle bundle = new S2CMicBundle(1024);
+		assertTrue(bundle.append(frame.getBuffer(), frame.position(), 0, limit));
+		assertFalse(bundle.append(frame.getBuffer(), frame.position(), 0, limit));
+		assertEquals(1, bundle.count);
+
+		bundle.clear();
+		assertTrue(bundle.append(frame.getBuffer(), frame.position(), 0, 1));
+	}
+
+	/**
+	 * Reading reuses one bundle and packet array, and only the first count packets belong to the bundle read
+	 */
+	@Test
+	public void testReadReusesBundle()
+	{
+		S2CMicBundle bundle = new S2CMicBundle(1024);
+		Output frame = frame(1, 10);
+		bundle.append(frame.getBuffer(), frame.position(), 0, 1024);
+		bundle.append(frame.getBuffer(), frame.position(), 0, 1024);
+		S2CMicBundle first = roundTrip(bundle);
+		S2CMicPacket[] packets = first.packets;
+
+		bundle.clear();
+		frame = frame(3, 12);
+		bundle.append(frame.getBuffer(), frame.position(), 200, 1024);
+		S2CMicBundle second = roundTrip(bundle);
+
+		assertSame(first, second);
+		assertSame(packets, second.packets);
+		assertEquals(1, second.count);
+		assertPacket(second.packets[0], 3, 12, 200);
+	}
+
+	/**
+	 * A bundle claiming more frames than a message could hold is rejected before anything is allocated for it
+	 */
+	@Test(expected = KryoException.class)
+	public void testTooManyFramesRejected()
+	{
+		Output output = new Output(16);
+		output.writeVarInt(S2CMicBundle.MAX_FRAMES + 1, true);
+		serializer.read(null, new Input(output.toBytes()), S2CMicBundle.class);
+	}
+
+	/**
+	 * The frames read before a bundle turns out to be truncated are given back to the pool
+	 */
+	@Test
+	public void testTruncatedBundleReleasesFrames()
+	{
+		S2CMicBundle bundle = new S2CMicBundle(1024);
+		Output frame = frame(1, 10);
+		bundle.append(frame.getBuffer(), frame.position(), 0, 1024);
+		bundle.append(frame.getBuffer(), frame.position(), 0, 1024);
+		Output output = new Output(2048);
+		serializer.write(null, output, bundle);
+
+		try
+		{
+			serializer.read(null, new Input(output.toBytes(), 0, output.position() - 1), S2CMicBundle.class);
+			fail();
+		}
+		catch (KryoException ex)
+		{
+			// expected
+		}
+
+		assertEquals(2, created);
+		pool.acquire();
+		pool.acquire();
+		assertEquals(2, created);
+	}
+
+	/**
+	 * Serializes a frame as the server does before bundling it
+	 *
+	 * @param decoder  session id of the speaker
+	 * @param sequence sequence number of the frame
+	 * @return output holding the frame, its position at the end of the frame
+	 */
+	private static Output frame(int decoder, int sequence)
+	{
+		Output output = new Output(256);
+		S2CMicPacket.writeFrame(output, new S2CMicPacket(decoder, 1, sequence, sequence * 20, data(decoder), -1));
+		return output;
+	}
+
+	/**
+	 * Makes some recognizable audio data for a speaker
+	 *
+	 * @param decoder session id of the speaker
+	 * @return the data
+	 */
+	private static byte[] data(int decoder)
+	{
+		byte[] data = new byte[DATA_SIZE];
+		Arrays.fill(data, (byte) decoder);
+		return data;
+	}
+
+	/**
+	 * Serializes a bundle and reads it back
+	 *
+	 * @param bundle bundle to serialize
+	 * @return the bundle read back
+	 */
+	private S2CMicBundle roundTrip(S2CMicBundle bundle)
+	{
+		Output output = new Output(2048);
+		serializer.write(null, output, bundle);
+		return serializer.read(null, new Input(output.toBytes()), S2CMicBundle.class);
+	}
+
+	/**
+	 * Checks a packet read back from a bundle
+	 *
+	 * @param packet   packet to check
+	 * @param decoder  expected session id
+	 * @param sequence expected sequence number
+	 * @param distance expected distance
+	 */
+	private static void assertPacket(S2CMicPacket packet, int decoder, int sequence, int distance)
+	{
+		assertEquals(decoder, packet.decoder);
+		assertEquals(sequence, packet.sequence);
+		assertEquals(sequence * 20, packet.timestamp);
+		assertEquals(distance, packet.distance);
+		assertEquals(DATA_SIZE, packet.length);
+		assertArrayEquals(data(decoder), Arrays.copyOf(packet.data, packet.length));
+	}
+}